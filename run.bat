@@ -69,7 +69,7 @@ echo ========================================
 echo.
 echo Starting Library Management System...
 echo.
-java -cp bin ui.MainFrame
+java -cp "bin;lib\*" ui.MainFrame
 goto end
 
 :error
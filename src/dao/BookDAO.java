@@ -1,41 +1,106 @@
 package dao;
 
 import models.Book;
-import models.Library;
+import models.BookPage;
+import models.BookQuery;
+import models.BookSort;
+import models.CatalogStats;
+import models.Isbn;
+import utils.Constants;
+import java.sql.SQLException;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 public class BookDAO {
-    private Library library;
-    private FileHandlerDAO fileHandler;
+    private BookStore store;
+    private boolean readOnly;
     
     public BookDAO() {
-        this.fileHandler = new FileHandlerDAO();
-        this.library = fileHandler.loadLibrary();
+        this(false);
     }
     
-    public void addBook(Book book) {
-        library.addBook(book);
-        fileHandler.saveLibrary(library);
+    // A read-only DAO replays the catalog without starting a journal writer or
+    // compactor, so it can sit beside the process that owns the data directory
+    public BookDAO(boolean readOnly) {
+        this.readOnly = readOnly;
+        this.store = openStore(readOnly);
     }
     
-    public boolean removeBook(String isbn) {
-        boolean removed = library.removeBook(isbn);
-        if (removed) fileHandler.saveLibrary(library);
-        return removed;
+    private static BookStore openStore(boolean readOnly) {
+        switch (Constants.STORAGE_MODE) {
+            case Constants.STORAGE_MAPPED:
+                checkUnshared(readOnly);
+                return new MappedBookStore();
+            case Constants.STORAGE_COLUMNAR:
+                return new ColumnarBookStore(readOnly);
+            case Constants.STORAGE_OFFHEAP:
+                return new OffHeapBookStore(readOnly);
+            case Constants.STORAGE_JDBC:
+                checkUnshared(readOnly);
+                try {
+                    return new JdbcBookStore();
+                } catch (SQLException e) {
+                    System.err.println("Error opening book database, falling back to files: " + e.getMessage());
+                }
+                return new FileBookStore(readOnly);
+            default:
+                return new FileBookStore(readOnly);
+        }
+    }
+    
+    // The mapped file and the database are changed in place, with no journal
+    // to replay, so they are only read while no other process has them open
+    private static void checkUnshared(boolean readOnly) {
+        if (readOnly && !DataLock.acquire())
+            throw new IllegalStateException("Error opening catalog: the library is open in another process");
     }
     
-    public void updateBook(Book book) {
-        removeBook(book.getIsbn());
-        addBook(book);
+    private void checkWritable() {
+        if (readOnly)
+            throw new IllegalStateException("Error saving book: the catalog is open read-only");
     }
     
-    public List<Book> getAllBooks() { return library.getAllBooks(); }
-    public List<Book> getAvailableBooks() { return library.getAvailableBooks(); }
-    public List<Book> getIssuedBooks() { return library.getIssuedBooks(); }
-    public List<Book> searchBooks(String keyword) { return library.searchBooks(keyword); }
-    public Book findBookByIsbn(String isbn) { return library.findBookByIsbn(isbn); }
+    public void addBook(Book book) { checkWritable(); store.addBook(book); }
+    public void addBooks(List<Book> books) { checkWritable(); store.addBooks(books); }
+    public boolean removeBook(String isbn) {
+        checkWritable();
+        if (isbn == null)
+            return false;
+        String canonical = Isbn.normalize(isbn);
+        return store.removeBook(isbn) || !canonical.equals(isbn) && store.removeBook(canonical);
+    }
+    public void updateBook(Book book) { checkWritable(); store.updateBook(book); }
+    
+    // Completes once every mutation made so far has been committed to disk
+    public CompletableFuture<Void> flush() { return store.flush(); }
+    
+    public List<Book> getAllBooks() { return store.getAllBooks(); }
+    public void forEachBook(Consumer<Book> action) { store.forEachBook(action); }
+    public List<Book> getAvailableBooks() { return store.getAvailableBooks(); }
+    public List<Book> getIssuedBooks() { return store.getIssuedBooks(); }
+    public List<Book> searchBooks(String keyword) { return store.searchBooks(keyword); }
+    public List<Book> query(BookQuery query) { return store.query(query); }
+    public BookPage page(BookSort sort, String cursor, int limit) { return store.page(sort, cursor, limit); }
+    public List<Book> searchRanked(String query, int limit) { return store.searchRanked(query, limit); }
+    public List<Book> searchFuzzy(String query, int limit) { return store.searchFuzzy(query, limit); }
+    public List<String> suggest(String prefix, int limit) { return store.suggest(prefix, limit); }
+    
+    // Books are stored under the canonical form of a valid ISBN, so an
+    // ISBN-10 or a hyphenated ISBN-13 is retried in that form
+    public Book findBookByIsbn(String isbn) {
+        if (isbn == null)
+            return null;
+        Book book = store.findBookByIsbn(isbn);
+        String canonical = Isbn.normalize(isbn);
+        return book != null || canonical.equals(isbn) ? book : store.findBookByIsbn(canonical);
+    }
     
-    public int getTotalBooks() { return library.getTotalBooks(); }
-    public int getAvailableBooksCount() { return library.getAvailableBooksCount(); }
-    public int getIssuedBooksCount() { return library.getIssuedBooksCount(); }
+    public int getTotalBooks() { return store.getTotalBooks(); }
+    public int getAvailableBooksCount() { return store.getAvailableBooksCount(); }
+    public int getIssuedBooksCount() { return store.getIssuedBooksCount(); }
+    public CatalogStats getStats() { return store.getStats(); }
+    public List<Book> getBooksIssuedTo(String username) { return store.getBooksIssuedTo(username); }
+    public int countBooksIssuedTo(String username) { return store.countBooksIssuedTo(username); }
+    public List<Book> getBooksDueBetween(long from, long to) { return store.getBooksDueBetween(from, to); }
 }
\ No newline at end of file
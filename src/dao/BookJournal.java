@@ -0,0 +1,186 @@
+package dao;
+
+import models.Book;
+import models.Library;
+import java.io.*;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+// Append-only log of catalog mutations on top of a RecordLog. Appends are
+// buffered; they reach the disk when the write-behind flusher commits.
+public class BookJournal implements WriteBehindFlusher.Sink {
+  private static final byte OP_ADD = 1;
+  private static final byte OP_REMOVE = 2;
+  private static final byte OP_UPDATE = 3;
+
+  // Receives replayed records; an update carries the book's new loan state
+  public interface Target {
+    void add(Book book);
+
+    void update(Book book);
+
+    void remove(String isbn);
+  }
+
+  private final RecordLog log;
+  private final File rotated;
+  private final boolean readOnly;
+
+  public BookJournal(String path) {
+    this(path, false);
+  }
+
+  // A read-only journal only replays, leaving a torn tail in place for the
+  // process that is still appending to it
+  public BookJournal(String path, boolean readOnly) {
+    this.log = new RecordLog(new File(path));
+    this.rotated = new File(path + ".compacting");
+    this.readOnly = readOnly;
+  }
+
+  public void logAdd(Book book) {
+    append(OP_ADD, book.getIsbn(), book);
+  }
+
+  public void logRemove(String isbn) {
+    append(OP_REMOVE, isbn, null);
+  }
+
+  // Issue and return both land here, carrying the book's current loan state
+  public void logUpdate(Book book) {
+    append(OP_UPDATE, book.getIsbn(), book);
+  }
+
+  public int getRecordCount() {
+    return log.getRecordCount();
+  }
+
+  public long getSize() {
+    return log.getSize();
+  }
+
+  // Applies every intact record on top of the given snapshot, starting with a
+  // segment left behind by an interrupted compaction. Records are idempotent
+  // upserts/deletes, so replaying over a newer snapshot is harmless. Replay
+  // runs against an ISBN-keyed map so a long tail (e.g. a bulk import that
+  // was never compacted) stays linear.
+  public Library replay(Library snapshot) {
+    return replay(snapshot, isbn -> {
+    });
+  }
+
+  // Reports the ISBN of every replayed record to touched
+  public Library replay(Library snapshot, Consumer<String> touched) {
+    Map<String, Book> books = new LinkedHashMap<>();
+    snapshot.forEachBook(book -> books.put(book.getIsbn(), book));
+    long[] nextSequence = { snapshot.getNextSequence() };
+    // An update moves the book to the end, as Library's remove-then-add does
+    Consumer<Book> upsert = book -> {
+      book.setSequence(nextSequence[0]++);
+      books.remove(book.getIsbn());
+      books.put(book.getIsbn(), book);
+      touched.accept(book.getIsbn());
+    };
+    int applied = replay(new Target() {
+      @Override
+      public void add(Book book) {
+        upsert.accept(book);
+      }
+
+      @Override
+      public void update(Book book) {
+        upsert.accept(book);
+      }
+
+      @Override
+      public void remove(String isbn) {
+        books.remove(isbn);
+        touched.accept(isbn);
+      }
+    });
+    if (applied == 0)
+      return snapshot;
+    return Library.restore(new ArrayList<>(books.values()));
+  }
+
+  // Feeds every intact record to target, oldest first; returns how many
+  public int replay(Target target) {
+    RecordLog.RecordHandler handler = record -> apply(target, record);
+    int applied = RecordLog.replay(rotated, handler);
+    return applied + (readOnly ? RecordLog.replay(log.getFile(), handler) : log.replay(handler));
+  }
+
+  public boolean hasRotatedSegment() {
+    return rotated.exists();
+  }
+
+  // Moves the live segment aside so a snapshot can be written without holding
+  // up new appends, which go to a fresh segment. A segment still pending from
+  // a failed compaction absorbs the live one so nothing is lost.
+  public synchronized void rotate() {
+    try {
+      log.commit();
+    } catch (IOException e) {
+      System.err.println("Error syncing journal: " + e.getMessage());
+    }
+    log.close();
+    File file = log.getFile();
+    try {
+      if (file.exists()) {
+        if (rotated.exists()) {
+          try (FileOutputStream append = new FileOutputStream(rotated, true)) {
+            Files.copy(file.toPath(), append);
+          }
+          Files.delete(file.toPath());
+        } else {
+          Files.move(file.toPath(), rotated.toPath());
+        }
+      }
+    } catch (IOException e) {
+      System.err.println("Error rotating journal: " + e.getMessage());
+    }
+  }
+
+  // Called once a snapshot covering the rotated segment is safely on disk
+  public void discardRotated() {
+    if (rotated.exists() && !rotated.delete())
+      System.err.println("Error discarding journal segment: " + rotated);
+  }
+
+  @Override
+  public synchronized void commit() throws IOException {
+    log.commit();
+  }
+
+  public void close() {
+    log.close();
+  }
+
+  private synchronized void append(byte op, String isbn, Book book) {
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+      DataOutputStream data = new DataOutputStream(bytes);
+      data.writeByte(op);
+      if (book != null)
+        RecordCodec.writeBook(data, book);
+      else
+        RecordCodec.writeString(data, isbn);
+      log.append(bytes.toByteArray());
+    } catch (IOException e) {
+      System.err.println("Error writing journal: " + e.getMessage());
+    }
+  }
+
+  private void apply(Target target, DataInputStream record) throws IOException {
+    byte op = record.readByte();
+    if (op == OP_REMOVE)
+      target.remove(RecordCodec.readString(record));
+    else if (op == OP_UPDATE)
+      target.update(RecordCodec.readBook(record));
+    else
+      target.add(RecordCodec.readBook(record));
+  }
+}
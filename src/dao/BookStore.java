@@ -0,0 +1,157 @@
+package dao;
+
+import models.Book;
+import models.BookPage;
+import models.BookQuery;
+import models.BookSort;
+import models.CatalogStats;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+// Storage backend behind BookDAO, selected with -Dlibrary.storage
+public interface BookStore {
+  void addBook(Book book);
+
+  boolean removeBook(String isbn);
+
+  // Persists a change to an existing book's loan state
+  void updateBook(Book book);
+
+  default void addBooks(List<Book> books) {
+    for (Book book : books)
+      addBook(book);
+  }
+
+  Book findBookByIsbn(String isbn);
+
+  List<Book> getAllBooks();
+
+  // Streams the catalog in order; writers wait until the walk is finished
+  void forEachBook(Consumer<Book> action);
+
+  List<Book> getAvailableBooks();
+
+  List<Book> getIssuedBooks();
+
+  List<Book> searchBooks(String keyword);
+
+  // Books matching query, in catalog order; stores without secondary
+  // indexes test every book in one pass
+  default List<Book> query(BookQuery query) {
+    List<Book> matches = new ArrayList<>();
+    forEachBook(book -> {
+      if (query.matches(book))
+        matches.add(book);
+    });
+    return matches;
+  }
+
+  // A page of books in sort order after cursor (null for the first page);
+  // stores without ordered indexes keep the smallest books past the cursor
+  // in one pass over the catalog
+  default BookPage page(BookSort sort, String cursor, int limit) {
+    Book from = BookPage.probe(sort, cursor);
+    Comparator<Book> order = sort.comparator();
+    PriorityQueue<Book> smallest = new PriorityQueue<>(order.reversed());
+    forEachBook(book -> {
+      if (!sort.includes(book) || from != null && order.compare(book, from) <= 0)
+        return;
+      smallest.add(book);
+      if (smallest.size() > limit + 1)
+        smallest.poll();
+    });
+    List<Book> books = new ArrayList<>(smallest);
+    books.sort(order);
+    return BookPage.of(sort, books, limit);
+  }
+
+  // Best matches first; stores without a text index fall back to the
+  // substring search in catalog order
+  default List<Book> searchRanked(String query, int limit) {
+    List<Book> matches = searchBooks(query);
+    return matches.size() > limit ? new ArrayList<>(matches.subList(0, limit)) : matches;
+  }
+
+  // Near misses for a query that found nothing; stores without a text index
+  // have no vocabulary to match against
+  default List<Book> searchFuzzy(String query, int limit) {
+    return new ArrayList<>();
+  }
+
+  // Titles and authors starting with prefix, the most common first; stores
+  // without a suggestion index count them in one pass over the catalog
+  default List<String> suggest(String prefix, int limit) {
+    if (prefix.isEmpty())
+      return new ArrayList<>();
+    Map<String, Integer> counts = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    forEachBook(book -> {
+      for (String key : new String[] { book.getTitle(), book.getAuthor() }) {
+        if (key != null && key.regionMatches(true, 0, prefix, 0, prefix.length()))
+          counts.merge(key, 1, Integer::sum);
+      }
+    });
+    return counts.entrySet().stream()
+        .sorted((a, b) -> Integer.compare(b.getValue(), a.getValue()))
+        .limit(limit)
+        .map(Map.Entry::getKey)
+        .collect(Collectors.toList());
+  }
+
+  int getTotalBooks();
+
+  int getAvailableBooksCount();
+
+  int getIssuedBooksCount();
+
+  // A member's loans; stores without a borrower index filter the issued books
+  default List<Book> getBooksIssuedTo(String username) {
+    return getIssuedBooks().stream()
+        .filter(book -> username.equals(book.getIssuedTo()))
+        .collect(Collectors.toList());
+  }
+
+  default int countBooksIssuedTo(String username) {
+    return getBooksIssuedTo(username).size();
+  }
+
+  // Issued books due in [from, to), earliest first; stores without a
+  // due-date index filter the issued books
+  default List<Book> getBooksDueBetween(long from, long to) {
+    return getIssuedBooks().stream()
+        .filter(book -> book.getDueDate() != null && book.getDueDate().getTime() >= from
+            && book.getDueDate().getTime() < to)
+        .sorted(Comparator.comparingLong(book -> book.getDueDate().getTime()))
+        .collect(Collectors.toList());
+  }
+
+  // Dashboard counters; stores that do not keep them count in one pass
+  default CatalogStats getStats() {
+    long now = System.currentTimeMillis();
+    int[] counts = new int[3];
+    Set<String> authors = new HashSet<>();
+    Map<String, Integer> genres = new TreeMap<>(Comparator.nullsFirst(Comparator.<String>naturalOrder()));
+    forEachBook(book -> {
+      counts[0]++;
+      if (book.isIssued()) {
+        counts[1]++;
+        if (book.getDueDate() != null && book.getDueDate().getTime() < now)
+          counts[2]++;
+      }
+      authors.add(book.getAuthor());
+      genres.merge(book.getGenre(), 1, Integer::sum);
+    });
+    return new CatalogStats(counts[0], counts[1], counts[2], authors.size(), genres);
+  }
+
+  // Completes once every mutation made so far is durable
+  CompletableFuture<Void> flush();
+}
@@ -0,0 +1,177 @@
+package dao;
+
+import models.Book;
+import models.BookQuery;
+import models.CatalogStats;
+import models.ColumnarCatalog;
+import models.Library;
+import utils.Constants;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+// Catalog held as a ColumnarCatalog instead of Book objects, persisted as a
+// column snapshot (books.col) plus a journal of the changes since it was
+// written. Loading the snapshot reads the columns straight into arrays. The
+// first columnar start imports the existing snapshot and journal once.
+public class ColumnarBookStore implements BookStore {
+  private ColumnarCatalog catalog;
+  private final JournaledSnapshot persistence;
+
+  public ColumnarBookStore() {
+    this(false);
+  }
+
+  // A read-only store replays the snapshot and journal without writing either
+  public ColumnarBookStore(boolean readOnly) {
+    persistence = new JournaledSnapshot(Constants.COLUMNAR_CATALOG_FILE, Constants.COLUMNAR_JOURNAL_FILE,
+        this, () -> catalog.copy()::writeTo, readOnly);
+    try {
+      if (persistence.exists()) {
+        catalog = persistence.read(ColumnarCatalog::readFrom);
+      } else {
+        catalog = new ColumnarCatalog();
+        Library existing = new BookJournal(Constants.JOURNAL_FILE, readOnly)
+            .replay(new FileHandlerDAO().loadLibrary());
+        existing.forEachBook(catalog::add);
+        if (!readOnly)
+          persistence.write(catalog::writeTo);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Error opening columnar catalog", e);
+    }
+    persistence.replay(new BookJournal.Target() {
+      @Override
+      public void add(Book book) {
+        catalog.add(book);
+      }
+
+      @Override
+      public void update(Book book) {
+        catalog.updateLoan(book);
+      }
+
+      @Override
+      public void remove(String isbn) {
+        catalog.remove(isbn);
+      }
+    });
+    if (!readOnly)
+      persistence.start();
+  }
+
+  @Override
+  public synchronized void addBook(Book book) {
+    catalog.add(book);
+    persistence.logAdd(book);
+    persistence.changed();
+  }
+
+  @Override
+  public synchronized void addBooks(List<Book> books) {
+    for (Book book : books) {
+      catalog.add(book);
+      persistence.logAdd(book);
+    }
+    persistence.changed();
+  }
+
+  @Override
+  public synchronized boolean removeBook(String isbn) {
+    boolean removed = catalog.remove(isbn);
+    if (removed) {
+      persistence.logRemove(isbn);
+      persistence.changed();
+    }
+    return removed;
+  }
+
+  @Override
+  public synchronized void updateBook(Book book) {
+    catalog.updateLoan(book);
+    persistence.logUpdate(book);
+    persistence.changed();
+  }
+
+  @Override
+  public CompletableFuture<Void> flush() {
+    return persistence.flush();
+  }
+
+  @Override
+  public synchronized List<Book> getAllBooks() {
+    return catalog.getAllBooks();
+  }
+
+  @Override
+  public synchronized void forEachBook(Consumer<Book> action) {
+    catalog.forEach(action);
+  }
+
+  @Override
+  public synchronized List<Book> getAvailableBooks() {
+    return catalog.getAvailableBooks();
+  }
+
+  @Override
+  public synchronized List<Book> getIssuedBooks() {
+    return catalog.getIssuedBooks();
+  }
+
+  @Override
+  public synchronized List<Book> searchBooks(String keyword) {
+    return catalog.search(keyword);
+  }
+
+  @Override
+  public synchronized List<Book> query(BookQuery query) {
+    return catalog.query(query);
+  }
+
+  @Override
+  public synchronized List<String> suggest(String prefix, int limit) {
+    return catalog.suggest(prefix, limit);
+  }
+
+  @Override
+  public synchronized Book findBookByIsbn(String isbn) {
+    return catalog.find(isbn);
+  }
+
+  @Override
+  public synchronized List<Book> getBooksIssuedTo(String username) {
+    return catalog.findIssuedTo(username);
+  }
+
+  @Override
+  public synchronized int countBooksIssuedTo(String username) {
+    return catalog.countIssuedTo(username);
+  }
+
+  @Override
+  public synchronized List<Book> getBooksDueBetween(long from, long to) {
+    return catalog.dueBetween(from, to);
+  }
+
+  @Override
+  public synchronized CatalogStats getStats() {
+    return catalog.getStats();
+  }
+
+  @Override
+  public synchronized int getTotalBooks() {
+    return catalog.size();
+  }
+
+  @Override
+  public synchronized int getAvailableBooksCount() {
+    return catalog.size() - catalog.issuedCount();
+  }
+
+  @Override
+  public synchronized int getIssuedBooksCount() {
+    return catalog.issuedCount();
+  }
+}
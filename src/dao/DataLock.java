@@ -0,0 +1,44 @@
+package dao;
+
+import utils.Constants;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.StandardOpenOption;
+
+// Exclusive lock on data/library.lock, held until exit by the one process
+// allowed to write the catalog, so the app and a CLI import never run their
+// journal writers and compactors over the same files
+public class DataLock {
+  private static FileChannel channel;
+  private static FileLock lock;
+
+  private DataLock() {
+  }
+
+  // False if another process holds the lock
+  public static synchronized boolean acquire() {
+    if (lock != null)
+      return true;
+    File file = new File(Constants.LOCK_FILE);
+    if (file.getParentFile() != null)
+      file.getParentFile().mkdirs();
+    try {
+      channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+      lock = channel.tryLock();
+    } catch (IOException | OverlappingFileLockException e) {
+      System.err.println("Error locking " + file + ": " + e.getMessage());
+    }
+    if (lock == null && channel != null) {
+      try {
+        channel.close();
+      } catch (IOException e) {
+        System.err.println("Error closing " + file + ": " + e.getMessage());
+      }
+      channel = null;
+    }
+    return lock != null;
+  }
+}
@@ -0,0 +1,79 @@
+package dao;
+
+import utils.Constants;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+// Connections to the embedded database used by the jdbc storage mode. Each
+// store opens its own, so a batch transaction on the book store's connection
+// never takes a user or request write with it. Any in-process driver works
+// (H2, SQLite); its jar just has to be on the classpath, e.g. in lib/ when
+// started through run.bat.
+public class Database {
+  private static boolean schemaReady;
+
+  private static final String[] SCHEMA = {
+      "CREATE TABLE IF NOT EXISTS books (isbn VARCHAR(64) PRIMARY KEY, seq BIGINT NOT NULL,"
+          + " title VARCHAR(512), author VARCHAR(256), genre VARCHAR(128), issued BOOLEAN NOT NULL,"
+          + " issued_to VARCHAR(128), issue_date BIGINT, due_date BIGINT)",
+      "CREATE INDEX IF NOT EXISTS books_seq ON books (seq)",
+      "CREATE INDEX IF NOT EXISTS books_author ON books (author)",
+      "CREATE INDEX IF NOT EXISTS books_genre ON books (genre)",
+      "CREATE INDEX IF NOT EXISTS books_issued_to ON books (issued_to)",
+      "CREATE INDEX IF NOT EXISTS books_due_date ON books (due_date)",
+      "CREATE TABLE IF NOT EXISTS users (username VARCHAR(128) PRIMARY KEY, password VARCHAR(256),"
+          + " email VARCHAR(256), email_key VARCHAR(256), role VARCHAR(16))",
+      "CREATE INDEX IF NOT EXISTS users_email ON users (email_key)",
+      "CREATE TABLE IF NOT EXISTS requests (request_id VARCHAR(64) PRIMARY KEY, seq BIGINT NOT NULL,"
+          + " isbn VARCHAR(64), username VARCHAR(128), request_date BIGINT, status VARCHAR(16))",
+      "CREATE INDEX IF NOT EXISTS requests_username ON requests (username)",
+      "CREATE INDEX IF NOT EXISTS requests_isbn_status ON requests (isbn, status)",
+      "CREATE INDEX IF NOT EXISTS requests_status ON requests (status)",
+      "CREATE TABLE IF NOT EXISTS library_meta (name VARCHAR(64) PRIMARY KEY, setting VARCHAR(256))"
+  };
+
+  // Lower-cased sort keys for the title and author pages. H2 cannot index
+  // LOWER(title) itself, so the keys are generated columns, added to tables
+  // created before they existed, and the indexes follow each page's ORDER BY
+  private static final String[][] SORT_KEYS = {
+      { "title_key", "VARCHAR(512) GENERATED ALWAYS AS (LOWER(title))" },
+      { "author_key", "VARCHAR(256) GENERATED ALWAYS AS (LOWER(author))" }
+  };
+  private static final String[] SORT_INDEXES = {
+      "CREATE INDEX IF NOT EXISTS books_title_order ON books (title_key, title, isbn)",
+      "CREATE INDEX IF NOT EXISTS books_author_order ON books (author_key, author, title_key, title, isbn)"
+  };
+
+  public static synchronized Connection openConnection() throws SQLException {
+    Connection connection = DriverManager.getConnection(Constants.JDBC_URL);
+    if (!schemaReady) {
+      try (Statement statement = connection.createStatement()) {
+        for (String ddl : SCHEMA)
+          statement.execute(ddl);
+        for (String[] column : SORT_KEYS) {
+          if (!hasColumn(connection, column[0]))
+            statement.execute("ALTER TABLE books ADD COLUMN " + column[0] + " " + column[1]);
+        }
+        for (String ddl : SORT_INDEXES)
+          statement.execute(ddl);
+      }
+      schemaReady = true;
+    }
+    return connection;
+  }
+
+  // Unquoted names are stored upper case
+  private static boolean hasColumn(Connection connection, String column) throws SQLException {
+    try (ResultSet rs = connection.getMetaData().getColumns(null, null, "BOOKS", column.toUpperCase())) {
+      return rs.next();
+    }
+  }
+
+  // Escapes LIKE wildcards so user input is matched literally (ESCAPE '\')
+  public static String likePattern(String value) {
+    return "%" + value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+  }
+}
@@ -0,0 +1,251 @@
+package dao;
+
+import models.Book;
+import models.BookPage;
+import models.BookQuery;
+import models.BookSort;
+import models.CatalogStats;
+import models.Library;
+import utils.Constants;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+// In-memory Library persisted as sharded snapshot files plus a journal of
+// mutations since the last compaction. Compaction rewrites only the shards
+// whose books changed.
+public class FileBookStore implements BookStore {
+  private Library library;
+  private FileHandlerDAO fileHandler;
+  private BookJournal journal;
+  private ScheduledExecutorService compactor;
+  private final AtomicBoolean compactionQueued = new AtomicBoolean();
+  private boolean[] dirtyShards;
+  private WriteBehindFlusher flusher = WriteBehindFlusher.getInstance();
+
+  public FileBookStore() {
+    this(false);
+  }
+
+  // Startup cost is the snapshot plus the journal tail written since the last compaction
+  public FileBookStore(boolean readOnly) {
+    this.fileHandler = new FileHandlerDAO();
+    this.journal = new BookJournal(Constants.JOURNAL_FILE, readOnly);
+    this.dirtyShards = new boolean[fileHandler.getShardCount()];
+    this.library = journal.replay(fileHandler.loadLibrary(), this::markShardDirty);
+    if (!fileHandler.isLayoutCurrent())
+      Arrays.fill(dirtyShards, true);
+    if (!readOnly)
+      startCompactor();
+  }
+
+  @Override
+  public synchronized void addBook(Book book) {
+    library.addBook(book);
+    journal.logAdd(book);
+    markShardDirty(book.getIsbn());
+    flusher.markDirty(journal);
+    requestCompactionIfNeeded();
+  }
+
+  // One dirty mark for the whole batch, so it is committed in a single fsync
+  @Override
+  public synchronized void addBooks(List<Book> books) {
+    for (Book book : books) {
+      library.addBook(book);
+      journal.logAdd(book);
+      markShardDirty(book.getIsbn());
+    }
+    flusher.markDirty(journal);
+    requestCompactionIfNeeded();
+  }
+
+  @Override
+  public synchronized boolean removeBook(String isbn) {
+    boolean removed = library.removeBook(isbn);
+    if (removed) {
+      journal.logRemove(isbn);
+      markShardDirty(isbn);
+      flusher.markDirty(journal);
+      requestCompactionIfNeeded();
+    }
+    return removed;
+  }
+
+  @Override
+  public synchronized void updateBook(Book book) {
+    library.updateBook(book);
+    journal.logUpdate(book);
+    markShardDirty(book.getIsbn());
+    flusher.markDirty(journal);
+    requestCompactionIfNeeded();
+  }
+
+  @Override
+  public CompletableFuture<Void> flush() {
+    return flusher.markDirty(journal);
+  }
+
+  private void markShardDirty(String isbn) {
+    dirtyShards[fileHandler.shardOf(isbn)] = true;
+  }
+
+  private void startCompactor() {
+    compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "catalog-compactor");
+      thread.setDaemon(true);
+      return thread;
+    });
+    compactor.scheduleWithFixedDelay(this::compact, Constants.COMPACT_INTERVAL_MS,
+        Constants.COMPACT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    if (journal.hasRotatedSegment() || !fileHandler.isLayoutCurrent())
+      requestCompaction();
+  }
+
+  private void requestCompactionIfNeeded() {
+    if (journal.getRecordCount() >= Constants.JOURNAL_COMPACT_RECORDS
+        || journal.getSize() >= Constants.JOURNAL_COMPACT_BYTES)
+      requestCompaction();
+  }
+
+  private void requestCompaction() {
+    if (compactionQueued.compareAndSet(false, true))
+      compactor.execute(this::compact);
+  }
+
+  // Writers are only held up while the dirty shards are encoded in memory;
+  // the disk writes happen after the journal has been rotated to a new segment.
+  private void compact() {
+    compactionQueued.set(false);
+    boolean[] shards;
+    byte[][] snapshot;
+    synchronized (this) {
+      shards = dirtyShards;
+      if (journal.getRecordCount() == 0 && !journal.hasRotatedSegment() && !anyDirty(shards))
+        return;
+      try {
+        snapshot = fileHandler.encode(library, shards);
+      } catch (IOException e) {
+        System.err.println("Error compacting library: " + e.getMessage());
+        return;
+      }
+      dirtyShards = new boolean[shards.length];
+      journal.rotate();
+    }
+    try {
+      fileHandler.writeShards(snapshot);
+      journal.discardRotated();
+    } catch (IOException e) {
+      System.err.println("Error compacting library: " + e.getMessage());
+      // The rotated segment is kept, so these shards are retried next time
+      synchronized (this) {
+        for (int i = 0; i < shards.length; i++)
+          dirtyShards[i] |= shards[i];
+      }
+    }
+  }
+
+  private static boolean anyDirty(boolean[] shards) {
+    for (boolean dirty : shards) {
+      if (dirty)
+        return true;
+    }
+    return false;
+  }
+
+  @Override
+  public synchronized List<Book> getAllBooks() {
+    return library.getAllBooks();
+  }
+
+  @Override
+  public synchronized void forEachBook(Consumer<Book> action) {
+    library.forEachBook(action);
+  }
+
+  @Override
+  public synchronized List<Book> getAvailableBooks() {
+    return library.getAvailableBooks();
+  }
+
+  @Override
+  public synchronized List<Book> getIssuedBooks() {
+    return library.getIssuedBooks();
+  }
+
+  @Override
+  public synchronized List<Book> searchBooks(String keyword) {
+    return library.searchBooks(keyword);
+  }
+
+  @Override
+  public synchronized List<Book> query(BookQuery query) {
+    return library.query(query);
+  }
+
+  @Override
+  public synchronized BookPage page(BookSort sort, String cursor, int limit) {
+    return library.page(sort, cursor, limit);
+  }
+
+  @Override
+  public synchronized List<Book> searchRanked(String query, int limit) {
+    return library.searchRanked(query, limit);
+  }
+
+  @Override
+  public synchronized List<Book> searchFuzzy(String query, int limit) {
+    return library.searchFuzzy(query, limit);
+  }
+
+  @Override
+  public synchronized List<String> suggest(String prefix, int limit) {
+    return library.suggest(prefix, limit);
+  }
+
+  @Override
+  public synchronized Book findBookByIsbn(String isbn) {
+    return library.findBookByIsbn(isbn);
+  }
+
+  @Override
+  public synchronized List<Book> getBooksIssuedTo(String username) {
+    return library.findBooksIssuedTo(username);
+  }
+
+  @Override
+  public synchronized int countBooksIssuedTo(String username) {
+    return library.countBooksIssuedTo(username);
+  }
+
+  @Override
+  public synchronized List<Book> getBooksDueBetween(long from, long to) {
+    return library.getBooksDueBetween(from, to);
+  }
+
+  @Override
+  public synchronized CatalogStats getStats() {
+    return library.getStats();
+  }
+
+  @Override
+  public synchronized int getTotalBooks() {
+    return library.getTotalBooks();
+  }
+
+  @Override
+  public synchronized int getAvailableBooksCount() {
+    return library.getAvailableBooksCount();
+  }
+
+  @Override
+  public synchronized int getIssuedBooksCount() {
+    return library.getIssuedBooksCount();
+  }
+}
@@ -1,32 +1,206 @@
 package dao;
 
+import models.Book;
 import models.Library;
+import utils.Constants;
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+// The catalog snapshot is split into CATALOG_SHARDS files by ISBN hash
+// (books-0.dat, books-1.dat, ...). Shards are loaded in parallel and each
+// can be rewritten on its own, so a compaction only touches the shards that
+// changed. Every record carries the book's sequence number, which restores
+// the catalog order when the shards are merged.
 public class FileHandlerDAO {
-  private static final String FILE_PATH = "data/books.dat";
+  private static final String FILE_PATH = Constants.DATA_FILE;
+  private static final Pattern SHARD_NAME = Pattern.compile("books-(\\d+)\\.dat");
+
+  private final int shardCount = Math.max(1, Constants.CATALOG_SHARDS);
+  private boolean layoutCurrent;
+
+  public int getShardCount() {
+    return shardCount;
+  }
+
+  public int shardOf(String isbn) {
+    return Math.floorMod(isbn.hashCode(), shardCount);
+  }
+
+  // False after loading the single-file books.dat or shards written with a
+  // different shard count; the next full write moves to the current layout
+  public boolean isLayoutCurrent() {
+    return layoutCurrent;
+  }
 
   public void saveLibrary(Library library) {
-    try (ObjectOutputStream out = new ObjectOutputStream(
-        new FileOutputStream(FILE_PATH))) {
-      new File(FILE_PATH).getParentFile().mkdirs();
-      out.writeObject(library);
+    boolean[] all = new boolean[shardCount];
+    Arrays.fill(all, true);
+    try {
+      writeShards(encode(library, all));
     } catch (IOException e) {
       System.err.println("Error saving library: " + e.getMessage());
     }
   }
 
+  // Encodes the selected shards in one pass over the library, in memory so
+  // callers can hold a lock only for this step. Unselected entries are null.
+  public byte[][] encode(Library library, boolean[] shards) throws IOException {
+    ByteArrayOutputStream[] bytes = new ByteArrayOutputStream[shardCount];
+    DataOutputStream[] outs = new DataOutputStream[shardCount];
+    for (int i = 0; i < shardCount; i++) {
+      if (!shards[i])
+        continue;
+      bytes[i] = new ByteArrayOutputStream();
+      outs[i] = new DataOutputStream(bytes[i]);
+      RecordCodec.writeHeader(outs[i]);
+    }
+    for (Book book : library.getAllBooks()) {
+      DataOutputStream out = outs[shardOf(book.getIsbn())];
+      if (out == null)
+        continue;
+      RecordCodec.writeVarLong(out, book.getSequence());
+      RecordCodec.writeBook(out, book);
+    }
+
+    byte[][] encoded = new byte[shardCount][];
+    for (int i = 0; i < shardCount; i++) {
+      if (outs[i] != null) {
+        outs[i].close();
+        encoded[i] = bytes[i].toByteArray();
+      }
+    }
+    return encoded;
+  }
+
+  // Once every shard has been written, the single-file snapshot and shards
+  // from an older shard count are removed
+  public void writeShards(byte[][] shards) throws IOException {
+    boolean full = true;
+    for (int i = 0; i < shards.length; i++) {
+      if (shards[i] != null)
+        writeSnapshot(shardFile(i), shards[i]);
+      else
+        full = false;
+    }
+    if (!full)
+      return;
+
+    Files.deleteIfExists(new File(FILE_PATH).toPath());
+    for (File file : listShardFiles()) {
+      if (shardIndex(file) >= shardCount)
+        Files.deleteIfExists(file.toPath());
+    }
+    layoutCurrent = true;
+  }
+
+  // Writes to a temp file first so a crash never leaves a half-written snapshot
+  private void writeSnapshot(File file, byte[] snapshot) throws IOException {
+    file.getParentFile().mkdirs();
+    File temp = new File(file.getPath() + ".tmp");
+    try (FileOutputStream out = new FileOutputStream(temp)) {
+      out.write(snapshot);
+      out.getFD().sync();
+    }
+    Files.move(temp.toPath(), file.toPath(),
+        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
   public Library loadLibrary() {
+    List<File> files = listShardFiles();
+    if (files.isEmpty()) {
+      layoutCurrent = false;
+      return loadSingleFile();
+    }
+
+    List<ForkJoinTask<List<Book>>> tasks = new ArrayList<>();
+    for (File file : files)
+      tasks.add(ForkJoinPool.commonPool().submit(() -> readShard(file)));
+    List<Book> merged = new ArrayList<>();
+    for (ForkJoinTask<List<Book>> task : tasks)
+      merged.addAll(task.join());
+
+    Book[] books = merged.toArray(new Book[0]);
+    Arrays.parallelSort(books, Comparator.comparingLong(Book::getSequence));
+    layoutCurrent = files.size() == shardCount && shardIndex(files.get(files.size() - 1)) == shardCount - 1
+        && !new File(FILE_PATH).exists();
+    return Library.restore(Arrays.asList(books));
+  }
+
+  // A damaged shard loses only its own books; the rest of the catalog loads
+  private static List<Book> readShard(File file) {
+    List<Book> books = new ArrayList<>();
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+      RecordCodec.readHeader(in);
+      while (true) {
+        long sequence;
+        try {
+          sequence = RecordCodec.readVarLong(in);
+        } catch (EOFException e) {
+          break;
+        }
+        Book book = RecordCodec.readBook(in);
+        book.setSequence(sequence);
+        books.add(book);
+      }
+    } catch (IOException e) {
+      System.err.println("Error loading " + file + ": " + e.getMessage());
+    }
+    return books;
+  }
+
+  // The pre-sharding books.dat, either Java-serialized or a codec snapshot
+  private Library loadSingleFile() {
     File file = new File(FILE_PATH);
     if (!file.exists())
       return new Library();
 
-    try (ObjectInputStream in = new ObjectInputStream(
-        new FileInputStream(file))) {
-      return (Library) in.readObject();
+    try (BufferedInputStream in = new BufferedInputStream(new FileInputStream(file), 1 << 16)) {
+      if (RecordCodec.isJavaSerialized(in))
+        return (Library) new ObjectInputStream(in).readObject();
+
+      DataInputStream data = new DataInputStream(in);
+      RecordCodec.readHeader(data);
+      Library library = new Library();
+      int count = RecordCodec.readVarInt(data);
+      for (int i = 0; i < count; i++)
+        library.addBook(RecordCodec.readBook(data));
+      return library;
     } catch (IOException | ClassNotFoundException e) {
       System.err.println("Error loading library: " + e.getMessage());
       return new Library();
     }
   }
+
+  private static File shardFile(int index) {
+    return new File(String.format(Constants.CATALOG_SHARD_FILE, index));
+  }
+
+  // Sorted by shard index
+  private static List<File> listShardFiles() {
+    List<File> files = new ArrayList<>();
+    File[] candidates = shardFile(0).getParentFile().listFiles();
+    if (candidates == null)
+      return files;
+    for (File file : candidates) {
+      if (SHARD_NAME.matcher(file.getName()).matches())
+        files.add(file);
+    }
+    files.sort(Comparator.comparingInt(FileHandlerDAO::shardIndex));
+    return files;
+  }
+
+  private static int shardIndex(File file) {
+    Matcher matcher = SHARD_NAME.matcher(file.getName());
+    return matcher.matches() ? Integer.parseInt(matcher.group(1)) : -1;
+  }
 }
\ No newline at end of file
@@ -0,0 +1,131 @@
+package dao;
+
+import models.BookRequest;
+import models.RequestStatus;
+import utils.Constants;
+import java.io.*;
+import java.util.*;
+import java.util.function.Consumer;
+
+// Requests persisted as a log of creations and status changes in
+// requests.dat, with in-memory hash indexes so duplicate checks and
+// per-user/per-id lookups never scan the full list. Each request adds at
+// most a couple of records, so the log is replayed as-is on startup.
+public class FileRequestStore implements RequestStore {
+  private static final byte OP_CREATE = 1;
+  private static final byte OP_STATUS = 2;
+
+  private final RecordLog log = new RecordLog(new File(Constants.REQUESTS_FILE));
+  private final WriteBehindFlusher flusher = WriteBehindFlusher.getInstance();
+
+  private final Map<String, BookRequest> byId = new LinkedHashMap<>();
+  private final Map<String, List<BookRequest>> byUsername = new HashMap<>();
+  private final Map<String, BookRequest> pending = new LinkedHashMap<>();
+  private final Set<String> pendingKeys = new HashSet<>();
+
+  public FileRequestStore() {
+    this(false);
+  }
+
+  public FileRequestStore(boolean readOnly) {
+    if (readOnly)
+      RecordLog.replay(log.getFile(), this::apply);
+    else
+      log.replay(this::apply);
+  }
+
+  @Override
+  public synchronized void addRequest(BookRequest request) {
+    index(request);
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+      DataOutputStream data = new DataOutputStream(bytes);
+      data.writeByte(OP_CREATE);
+      RecordCodec.writeRequest(data, request);
+      append(bytes.toByteArray());
+    } catch (IOException e) {
+      System.err.println("Error saving request: " + e.getMessage());
+    }
+  }
+
+  @Override
+  public synchronized void updateRequest(BookRequest request) {
+    if (request.getStatus() != RequestStatus.PENDING)
+      unmarkPending(request);
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+      DataOutputStream data = new DataOutputStream(bytes);
+      data.writeByte(OP_STATUS);
+      RecordCodec.writeString(data, request.getRequestId());
+      data.writeByte(request.getStatus().ordinal());
+      append(bytes.toByteArray());
+    } catch (IOException e) {
+      System.err.println("Error saving request: " + e.getMessage());
+    }
+  }
+
+  @Override
+  public synchronized BookRequest findRequestById(String requestId) {
+    return byId.get(requestId);
+  }
+
+  @Override
+  public synchronized boolean hasPendingRequest(String isbn, String username) {
+    return pendingKeys.contains(pendingKey(isbn, username));
+  }
+
+  @Override
+  public synchronized List<BookRequest> getPendingRequests() {
+    return new ArrayList<>(pending.values());
+  }
+
+  @Override
+  public synchronized List<BookRequest> getUserRequests(String username) {
+    return new ArrayList<>(byUsername.getOrDefault(username, Collections.emptyList()));
+  }
+
+  @Override
+  public synchronized void forEachRequest(Consumer<BookRequest> action) {
+    byId.values().forEach(action);
+  }
+
+  private void append(byte[] payload) throws IOException {
+    log.append(payload);
+    flusher.markDirty(log);
+  }
+
+  private void apply(DataInputStream record) throws IOException {
+    byte op = record.readByte();
+    if (op == OP_CREATE) {
+      BookRequest request = RecordCodec.readRequest(record);
+      BookRequest.seedRequestId(request.getRequestId());
+      index(request);
+      return;
+    }
+
+    BookRequest request = byId.get(RecordCodec.readString(record));
+    if (request == null)
+      return;
+    request.setStatus(RequestStatus.values()[record.readUnsignedByte()]);
+    if (request.getStatus() != RequestStatus.PENDING)
+      unmarkPending(request);
+  }
+
+  private void index(BookRequest request) {
+    byId.put(request.getRequestId(), request);
+    byUsername.computeIfAbsent(request.getUsername(), k -> new ArrayList<>()).add(request);
+    if (request.getStatus() == RequestStatus.PENDING) {
+      pending.put(request.getRequestId(), request);
+      pendingKeys.add(pendingKey(request.getIsbn(), request.getUsername()));
+    }
+  }
+
+  private void unmarkPending(BookRequest request) {
+    if (pending.remove(request.getRequestId()) != null)
+      pendingKeys.remove(pendingKey(request.getIsbn(), request.getUsername()));
+  }
+
+  private static String pendingKey(String isbn, String username) {
+    return isbn + '\n' + username;
+  }
+}
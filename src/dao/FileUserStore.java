@@ -0,0 +1,103 @@
+package dao;
+
+import models.User;
+import utils.Constants;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+// Users indexed in memory by username and by email, persisted as one
+// users.log record per registration. A users.dat from earlier versions is
+// imported into the log the first time.
+public class FileUserStore implements UserStore {
+  private final RecordLog log = new RecordLog(new File(Constants.USER_LOG_FILE));
+  private final Map<String, User> byUsername = new LinkedHashMap<>();
+  private final Map<String, User> byEmail = new HashMap<>();
+  private WriteBehindFlusher flusher = WriteBehindFlusher.getInstance();
+
+  public FileUserStore() {
+    if (log.getFile().exists()) {
+      log.replay(record -> index(RecordCodec.readUser(record)));
+      return;
+    }
+    for (User user : loadLegacyUsers()) {
+      index(user);
+      append(user);
+    }
+  }
+
+  // Files written before the binary codec are read via Java serialization
+  @SuppressWarnings("unchecked")
+  private List<User> loadLegacyUsers() {
+    File file = new File(Constants.USER_FILE);
+    if (!file.exists())
+      return new ArrayList<>();
+
+    try (BufferedInputStream in = new BufferedInputStream(new FileInputStream(file))) {
+      if (RecordCodec.isJavaSerialized(in))
+        return (List<User>) new ObjectInputStream(in).readObject();
+
+      DataInputStream data = new DataInputStream(in);
+      RecordCodec.readHeader(data);
+      int count = RecordCodec.readVarInt(data);
+      List<User> loaded = new ArrayList<>(count);
+      for (int i = 0; i < count; i++)
+        loaded.add(RecordCodec.readUser(data));
+      return loaded;
+    } catch (IOException | ClassNotFoundException e) {
+      System.err.println("Error loading users: " + e.getMessage());
+      return new ArrayList<>();
+    }
+  }
+
+  private void append(User user) {
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+      RecordCodec.writeUser(new DataOutputStream(bytes), user);
+      log.append(bytes.toByteArray());
+      flusher.markDirty(log);
+    } catch (IOException e) {
+      System.err.println("Error saving user: " + e.getMessage());
+    }
+  }
+
+  private void index(User user) {
+    byUsername.put(user.getUsername(), user);
+    if (user.getEmail() != null)
+      byEmail.put(user.getEmail().toLowerCase(), user);
+  }
+
+  @Override
+  public CompletableFuture<Void> flush() {
+    return flusher.markDirty(log);
+  }
+
+  @Override
+  public synchronized boolean isEmpty() {
+    return byUsername.isEmpty();
+  }
+
+  @Override
+  public synchronized boolean addUser(User user) {
+    if (byUsername.containsKey(user.getUsername()))
+      return false;
+
+    index(user);
+    append(user);
+    return true;
+  }
+
+  @Override
+  public synchronized User findUserByUsername(String username) {
+    return byUsername.get(username);
+  }
+
+  @Override
+  public synchronized User findUserByEmail(String email) {
+    return byEmail.get(email.toLowerCase());
+  }
+}
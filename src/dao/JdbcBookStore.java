@@ -0,0 +1,402 @@
+package dao;
+
+import models.Book;
+import models.BookPage;
+import models.BookQuery;
+import models.BookSort;
+import models.CatalogStats;
+import models.Library;
+import utils.Constants;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+// Catalog kept in an embedded database; every mutation is a single-row
+// statement and lookups go through the isbn, author, genre and issued_to indexes
+public class JdbcBookStore implements BookStore {
+  private static final int FETCH_SIZE = 1_000;
+  private static final String COLUMNS = "isbn, title, author, genre, issued, issued_to, issue_date, due_date";
+
+  private final Connection connection;
+  private long nextSeq;
+
+  public JdbcBookStore() throws SQLException {
+    this.connection = Database.openConnection();
+    try (Statement statement = connection.createStatement();
+        ResultSet rs = statement.executeQuery("SELECT MAX(seq) FROM books")) {
+      nextSeq = rs.next() ? rs.getLong(1) + 1 : 0;
+    }
+    if (!isCatalogImported())
+      importExistingCatalog();
+  }
+
+  // The first database start takes over the file-based catalog and records
+  // that it did, so a catalog emptied on purpose is not refilled from the
+  // files. A database filled before the record existed counts as imported.
+  private void importExistingCatalog() throws SQLException {
+    if (getTotalBooks() == 0) {
+      Library existing = new BookJournal(Constants.JOURNAL_FILE)
+          .replay(new FileHandlerDAO().loadLibrary());
+      if (existing.getTotalBooks() > 0)
+        addBooks(existing.getAllBooks());
+    }
+    try (PreparedStatement insert = connection.prepareStatement(
+        "INSERT INTO library_meta (name, setting) VALUES ('catalog_imported', 'true')")) {
+      insert.executeUpdate();
+    }
+  }
+
+  private boolean isCatalogImported() throws SQLException {
+    try (Statement statement = connection.createStatement();
+        ResultSet rs = statement.executeQuery("SELECT setting FROM library_meta WHERE name = 'catalog_imported'")) {
+      return rs.next();
+    }
+  }
+
+  @Override
+  public synchronized void addBook(Book book) {
+    try (PreparedStatement insert = prepareInsert()) {
+      bindInsert(insert, book);
+      insert.executeUpdate();
+    } catch (SQLException e) {
+      throw new IllegalStateException("Error adding book: " + e.getMessage(), e);
+    }
+  }
+
+  // One transaction and one round of batched inserts for the whole list
+  @Override
+  public synchronized void addBooks(List<Book> books) {
+    try (PreparedStatement insert = prepareInsert()) {
+      connection.setAutoCommit(false);
+      for (Book book : books) {
+        bindInsert(insert, book);
+        insert.addBatch();
+      }
+      insert.executeBatch();
+      connection.commit();
+    } catch (SQLException e) {
+      rollback();
+      throw new IllegalStateException("Error adding books: " + e.getMessage(), e);
+    } finally {
+      restoreAutoCommit();
+    }
+  }
+
+  @Override
+  public synchronized boolean removeBook(String isbn) {
+    try (PreparedStatement delete = connection.prepareStatement("DELETE FROM books WHERE isbn = ?")) {
+      delete.setString(1, isbn);
+      return delete.executeUpdate() > 0;
+    } catch (SQLException e) {
+      System.err.println("Error removing book: " + e.getMessage());
+      return false;
+    }
+  }
+
+  @Override
+  public synchronized void updateBook(Book book) {
+    try (PreparedStatement update = connection.prepareStatement(
+        "UPDATE books SET issued = ?, issued_to = ?, issue_date = ?, due_date = ? WHERE isbn = ?")) {
+      update.setBoolean(1, book.isIssued());
+      update.setString(2, book.getIssuedTo());
+      setDate(update, 3, book.getIssueDate());
+      setDate(update, 4, book.getDueDate());
+      update.setString(5, book.getIsbn());
+      update.executeUpdate();
+    } catch (SQLException e) {
+      throw new IllegalStateException("Error updating book: " + e.getMessage(), e);
+    }
+  }
+
+  // Statements auto-commit, so everything is already durable
+  @Override
+  public CompletableFuture<Void> flush() {
+    return CompletableFuture.completedFuture(null);
+  }
+
+  @Override
+  public synchronized Book findBookByIsbn(String isbn) {
+    List<Book> books = query("WHERE isbn = ?", isbn);
+    return books.isEmpty() ? null : books.get(0);
+  }
+
+  @Override
+  public synchronized List<Book> getAllBooks() {
+    return query("");
+  }
+
+  @Override
+  public synchronized void forEachBook(Consumer<Book> action) {
+    query("", action);
+  }
+
+  @Override
+  public synchronized List<Book> getAvailableBooks() {
+    return query("WHERE issued = FALSE");
+  }
+
+  @Override
+  public synchronized List<Book> getIssuedBooks() {
+    return query("WHERE issued = TRUE");
+  }
+
+  @Override
+  public synchronized List<Book> searchBooks(String keyword) {
+    String lower = Database.likePattern(keyword.toLowerCase());
+    return query("WHERE LOWER(title) LIKE ? ESCAPE '\\' OR LOWER(author) LIKE ? ESCAPE '\\'"
+        + " OR isbn LIKE ? ESCAPE '\\'", lower, lower, Database.likePattern(keyword));
+  }
+
+  // Sent as one WHERE clause, so the database's planner chooses among the
+  // author, genre, issued_to and due_date indexes
+  @Override
+  public synchronized List<Book> query(BookQuery query) {
+    List<String> params = new ArrayList<>();
+    String where = "WHERE " + toSql(query, params);
+    return query(where, params.toArray(new String[0]));
+  }
+
+  // NOT treats an unknown (NULL) comparison as false first, so a book with
+  // no genre matches NOT genre = x just like BookQuery.matches
+  private static String toSql(BookQuery query, List<String> params) {
+    switch (query.getKind()) {
+      case ISBN:
+        params.add(query.getValue());
+        return "isbn = ?";
+      case TITLE:
+        params.add(Database.likePattern(query.getLowerValue()));
+        return "LOWER(title) LIKE ? ESCAPE '\\'";
+      case AUTHOR:
+        return equalTo("author", query.getValue(), params);
+      case GENRE:
+        return equalTo("genre", query.getValue(), params);
+      case ISSUED:
+        return "issued = TRUE";
+      case AVAILABLE:
+        return "issued = FALSE";
+      case ISSUED_TO:
+        params.add(query.getValue());
+        return "(issued = TRUE AND issued_to = ?)";
+      case DUE_BETWEEN:
+        return "(issued = TRUE AND due_date >= " + query.getFrom() + " AND due_date < " + query.getTo() + ")";
+      case KEYWORD:
+        String lower = Database.likePattern(query.getLowerValue());
+        params.add(lower);
+        params.add(lower);
+        params.add(Database.likePattern(query.getValue()));
+        return "(LOWER(title) LIKE ? ESCAPE '\\' OR LOWER(author) LIKE ? ESCAPE '\\'"
+            + " OR isbn LIKE ? ESCAPE '\\')";
+      case NOT:
+        return "NOT COALESCE(" + toSql(query.getOperands().get(0), params) + ", FALSE)";
+      default:
+        List<String> parts = new ArrayList<>();
+        for (BookQuery operand : query.getOperands())
+          parts.add(toSql(operand, params));
+        return "(" + String.join(" " + query.getKind() + " ", parts) + ")";
+    }
+  }
+
+  private static String equalTo(String column, String value, List<String> params) {
+    if (value == null)
+      return column + " IS NULL";
+    params.add(value);
+    return column + " = ?";
+  }
+
+  // Keyset pagination: a row-value comparison finds the first row after the
+  // cursor in ORDER BY order, and LIMIT stops one row past the page. Title
+  // and author pages run on books_title_order and books_author_order, ISBN
+  // and due-date pages on the primary key and books_due_date; the due date
+  // is a number, not user input.
+  @Override
+  public synchronized BookPage page(BookSort sort, String cursor, int limit) {
+    Book from = BookPage.probe(sort, cursor);
+    String key;
+    String where = "";
+    List<String> params = new ArrayList<>();
+    switch (sort) {
+      case TITLE:
+        key = "title_key, title, isbn";
+        if (from != null) {
+          where = "WHERE (" + key + ") > (?, ?, ?)";
+          Collections.addAll(params, from.getTitle().toLowerCase(), from.getTitle(), from.getIsbn());
+        }
+        break;
+      case AUTHOR:
+        key = "author_key, author, title_key, title, isbn";
+        if (from != null) {
+          where = "WHERE (" + key + ") > (?, ?, ?, ?, ?)";
+          Collections.addAll(params, from.getAuthor().toLowerCase(), from.getAuthor(),
+              from.getTitle().toLowerCase(), from.getTitle(), from.getIsbn());
+        }
+        break;
+      case ISBN:
+        key = "isbn";
+        if (from != null) {
+          where = "WHERE isbn > ?";
+          params.add(from.getIsbn());
+        }
+        break;
+      default:
+        key = "due_date, isbn";
+        where = "WHERE issued = TRUE AND due_date IS NOT NULL";
+        if (from != null) {
+          where += " AND (" + key + ") > (" + from.getDueDate().getTime() + ", ?)";
+          params.add(from.getIsbn());
+        }
+    }
+    List<Book> books = new ArrayList<>();
+    select(where + " ORDER BY " + key + " LIMIT " + (limit + 1), books::add, params.toArray(new String[0]));
+    return BookPage.of(sort, books, limit);
+  }
+
+  @Override
+  public synchronized int getTotalBooks() {
+    return count("");
+  }
+
+  @Override
+  public synchronized int getAvailableBooksCount() {
+    return count("WHERE issued = FALSE");
+  }
+
+  // Looked up through books_issued_to
+  @Override
+  public synchronized List<Book> getBooksIssuedTo(String username) {
+    return query("WHERE issued = TRUE AND issued_to = ?", username);
+  }
+
+  // Range scan on books_due_date; the bounds are numbers, not user input
+  @Override
+  public synchronized List<Book> getBooksDueBetween(long from, long to) {
+    List<Book> due = query("WHERE issued = TRUE AND due_date >= " + from + " AND due_date < " + to);
+    due.sort(Comparator.comparingLong(book -> book.getDueDate().getTime()));
+    return due;
+  }
+
+  @Override
+  public synchronized int getIssuedBooksCount() {
+    return count("WHERE issued = TRUE");
+  }
+
+  // Aggregated by the database instead of streaming every row back
+  @Override
+  public synchronized CatalogStats getStats() {
+    Map<String, Integer> genres = new TreeMap<>(Comparator.nullsFirst(Comparator.<String>naturalOrder()));
+    try (PreparedStatement totals = connection.prepareStatement(
+        "SELECT COUNT(*), SUM(CASE WHEN issued THEN 1 ELSE 0 END),"
+            + " SUM(CASE WHEN issued AND due_date < ? THEN 1 ELSE 0 END), COUNT(DISTINCT author) FROM books");
+        Statement byGenre = connection.createStatement()) {
+      totals.setLong(1, System.currentTimeMillis());
+      try (ResultSet rs = byGenre.executeQuery("SELECT genre, COUNT(*) FROM books GROUP BY genre")) {
+        while (rs.next())
+          genres.put(rs.getString(1), rs.getInt(2));
+      }
+      try (ResultSet rs = totals.executeQuery()) {
+        rs.next();
+        return new CatalogStats(rs.getInt(1), rs.getInt(2), rs.getInt(3), rs.getInt(4), genres);
+      }
+    } catch (SQLException e) {
+      System.err.println("Error counting books: " + e.getMessage());
+      return new CatalogStats(0, 0, 0, 0, genres);
+    }
+  }
+
+  private PreparedStatement prepareInsert() throws SQLException {
+    return connection.prepareStatement(
+        "INSERT INTO books (seq, " + COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)");
+  }
+
+  private void bindInsert(PreparedStatement insert, Book book) throws SQLException {
+    insert.setLong(1, nextSeq++);
+    insert.setString(2, book.getIsbn());
+    insert.setString(3, book.getTitle());
+    insert.setString(4, book.getAuthor());
+    insert.setString(5, book.getGenre());
+    insert.setBoolean(6, book.isIssued());
+    insert.setString(7, book.getIssuedTo());
+    setDate(insert, 8, book.getIssueDate());
+    setDate(insert, 9, book.getDueDate());
+  }
+
+  private List<Book> query(String where, String... params) {
+    List<Book> books = new ArrayList<>();
+    query(where, books::add, params);
+    return books;
+  }
+
+  private void query(String where, Consumer<Book> action, String... params) {
+    select(where + " ORDER BY seq", action, params);
+  }
+
+  // Rows are fetched in pages as the cursor advances, so a full walk never
+  // holds the whole table in memory
+  private void select(String clauses, Consumer<Book> action, String... params) {
+    try (PreparedStatement select = connection.prepareStatement(
+        "SELECT " + COLUMNS + " FROM books " + clauses)) {
+      select.setFetchSize(FETCH_SIZE);
+      for (int i = 0; i < params.length; i++)
+        select.setString(i + 1, params[i]);
+      try (ResultSet rs = select.executeQuery()) {
+        while (rs.next())
+          action.accept(readBook(rs));
+      }
+    } catch (SQLException e) {
+      System.err.println("Error querying books: " + e.getMessage());
+    }
+  }
+
+  private int count(String where) {
+    try (Statement statement = connection.createStatement();
+        ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM books " + where)) {
+      return rs.next() ? rs.getInt(1) : 0;
+    } catch (SQLException e) {
+      System.err.println("Error counting books: " + e.getMessage());
+      return 0;
+    }
+  }
+
+  private static Book readBook(ResultSet rs) throws SQLException {
+    Book book = new Book(rs.getString(1), rs.getString(2), rs.getString(3), rs.getString(4));
+    book.setIssued(rs.getBoolean(5));
+    book.setIssuedTo(rs.getString(6));
+    book.setIssueDate(getDate(rs, 7));
+    book.setDueDate(getDate(rs, 8));
+    return book;
+  }
+
+  private static void setDate(PreparedStatement statement, int index, Date date) throws SQLException {
+    if (date != null)
+      statement.setLong(index, date.getTime());
+    else
+      statement.setNull(index, Types.BIGINT);
+  }
+
+  private static Date getDate(ResultSet rs, int index) throws SQLException {
+    long millis = rs.getLong(index);
+    return rs.wasNull() ? null : new Date(millis);
+  }
+
+  private void rollback() {
+    try {
+      connection.rollback();
+    } catch (SQLException e) {
+      System.err.println("Error rolling back: " + e.getMessage());
+    }
+  }
+
+  private void restoreAutoCommit() {
+    try {
+      connection.setAutoCommit(true);
+    } catch (SQLException e) {
+      System.err.println("Error restoring auto-commit: " + e.getMessage());
+    }
+  }
+}
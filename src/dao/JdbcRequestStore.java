@@ -0,0 +1,110 @@
+package dao;
+
+import models.BookRequest;
+import models.RequestStatus;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Consumer;
+
+public class JdbcRequestStore implements RequestStore {
+  private static final int FETCH_SIZE = 1_000;
+  private static final String COLUMNS = "request_id, isbn, username, request_date, status";
+
+  private final Connection connection;
+  private long nextSeq;
+
+  public JdbcRequestStore() throws SQLException {
+    this.connection = Database.openConnection();
+    try (Statement statement = connection.createStatement();
+        ResultSet rs = statement.executeQuery("SELECT MAX(seq) FROM requests")) {
+      nextSeq = rs.next() ? rs.getLong(1) + 1 : 0;
+    }
+    // Ids are "REQ_" and a number, so the longest, then greatest, is the highest
+    try (Statement statement = connection.createStatement();
+        ResultSet rs = statement.executeQuery(
+            "SELECT request_id FROM requests ORDER BY LENGTH(request_id) DESC, request_id DESC LIMIT 1")) {
+      if (rs.next())
+        BookRequest.seedRequestId(rs.getString(1));
+    }
+  }
+
+  @Override
+  public synchronized void addRequest(BookRequest request) {
+    try (PreparedStatement insert = connection.prepareStatement(
+        "INSERT INTO requests (seq, " + COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?)")) {
+      insert.setLong(1, nextSeq++);
+      insert.setString(2, request.getRequestId());
+      insert.setString(3, request.getIsbn());
+      insert.setString(4, request.getUsername());
+      insert.setLong(5, request.getRequestDate().getTime());
+      insert.setString(6, request.getStatus().name());
+      insert.executeUpdate();
+    } catch (SQLException e) {
+      System.err.println("Error saving request: " + e.getMessage());
+    }
+  }
+
+  @Override
+  public synchronized void updateRequest(BookRequest request) {
+    try (PreparedStatement update = connection.prepareStatement(
+        "UPDATE requests SET status = ? WHERE request_id = ?")) {
+      update.setString(1, request.getStatus().name());
+      update.setString(2, request.getRequestId());
+      update.executeUpdate();
+    } catch (SQLException e) {
+      System.err.println("Error updating request: " + e.getMessage());
+    }
+  }
+
+  @Override
+  public synchronized BookRequest findRequestById(String requestId) {
+    List<BookRequest> requests = query("WHERE request_id = ?", requestId);
+    return requests.isEmpty() ? null : requests.get(0);
+  }
+
+  @Override
+  public synchronized boolean hasPendingRequest(String isbn, String username) {
+    return !query("WHERE isbn = ? AND status = ? AND username = ?",
+        isbn, RequestStatus.PENDING.name(), username).isEmpty();
+  }
+
+  @Override
+  public synchronized List<BookRequest> getPendingRequests() {
+    return query("WHERE status = ?", RequestStatus.PENDING.name());
+  }
+
+  @Override
+  public synchronized List<BookRequest> getUserRequests(String username) {
+    return query("WHERE username = ?", username);
+  }
+
+  @Override
+  public synchronized void forEachRequest(Consumer<BookRequest> action) {
+    query("", action);
+  }
+
+  private List<BookRequest> query(String where, String... params) {
+    List<BookRequest> requests = new ArrayList<>();
+    query(where, requests::add, params);
+    return requests;
+  }
+
+  private void query(String where, Consumer<BookRequest> action, String... params) {
+    try (PreparedStatement select = connection.prepareStatement(
+        "SELECT " + COLUMNS + " FROM requests " + where + " ORDER BY seq")) {
+      select.setFetchSize(FETCH_SIZE);
+      for (int i = 0; i < params.length; i++)
+        select.setString(i + 1, params[i]);
+      try (ResultSet rs = select.executeQuery()) {
+        while (rs.next()) {
+          action.accept(new BookRequest(rs.getString(1), rs.getString(2), rs.getString(3),
+              new Date(rs.getLong(4)), RequestStatus.valueOf(rs.getString(5))));
+        }
+      }
+    } catch (SQLException e) {
+      System.err.println("Error querying requests: " + e.getMessage());
+    }
+  }
+}
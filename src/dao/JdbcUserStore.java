@@ -0,0 +1,73 @@
+package dao;
+
+import models.User;
+import models.UserRole;
+import java.sql.*;
+import java.util.concurrent.CompletableFuture;
+
+public class JdbcUserStore implements UserStore {
+  private final Connection connection;
+
+  public JdbcUserStore() throws SQLException {
+    this.connection = Database.openConnection();
+  }
+
+  @Override
+  public synchronized boolean isEmpty() {
+    try (Statement statement = connection.createStatement();
+        ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM users")) {
+      return !rs.next() || rs.getInt(1) == 0;
+    } catch (SQLException e) {
+      System.err.println("Error counting users: " + e.getMessage());
+      return false;
+    }
+  }
+
+  @Override
+  public synchronized boolean addUser(User user) {
+    if (findUserByUsername(user.getUsername()) != null)
+      return false;
+    try (PreparedStatement insert = connection.prepareStatement(
+        "INSERT INTO users (username, password, email, email_key, role) VALUES (?, ?, ?, ?, ?)")) {
+      insert.setString(1, user.getUsername());
+      insert.setString(2, user.getPassword());
+      insert.setString(3, user.getEmail());
+      insert.setString(4, user.getEmail() != null ? user.getEmail().toLowerCase() : null);
+      insert.setString(5, user.getRole().name());
+      return insert.executeUpdate() > 0;
+    } catch (SQLException e) {
+      System.err.println("Error saving user: " + e.getMessage());
+      return false;
+    }
+  }
+
+  @Override
+  public synchronized User findUserByUsername(String username) {
+    return findUser("username = ?", username);
+  }
+
+  @Override
+  public synchronized User findUserByEmail(String email) {
+    return findUser("email_key = ?", email.toLowerCase());
+  }
+
+  private User findUser(String where, String value) {
+    try (PreparedStatement select = connection.prepareStatement(
+        "SELECT username, password, email, role FROM users WHERE " + where)) {
+      select.setString(1, value);
+      try (ResultSet rs = select.executeQuery()) {
+        if (!rs.next())
+          return null;
+        return new User(rs.getString(1), rs.getString(2), rs.getString(3), UserRole.valueOf(rs.getString(4)));
+      }
+    } catch (SQLException e) {
+      System.err.println("Error loading user: " + e.getMessage());
+      return null;
+    }
+  }
+
+  @Override
+  public CompletableFuture<Void> flush() {
+    return CompletableFuture.completedFuture(null);
+  }
+}
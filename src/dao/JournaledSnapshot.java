@@ -0,0 +1,136 @@
+package dao;
+
+import models.Book;
+import utils.Constants;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+// Persistence for stores that hold their whole catalog in one structure:
+// a snapshot file plus a journal of the changes since it was written.
+// Compaction takes a copy of the catalog while holding the store's lock,
+// rotates the journal, and writes the copy after the lock is released.
+class JournaledSnapshot {
+  interface Snapshot {
+    void writeTo(DataOutputStream out) throws IOException;
+  }
+
+  interface Reader<T> {
+    T readFrom(DataInputStream in) throws IOException;
+  }
+
+  private final File file;
+  private final BookJournal journal;
+  private final Object lock;
+  private final Supplier<Snapshot> copier;
+  private ScheduledExecutorService compactor;
+  private final AtomicBoolean compactionQueued = new AtomicBoolean();
+  private WriteBehindFlusher flusher = WriteBehindFlusher.getInstance();
+
+  // copier is called with lock held
+  JournaledSnapshot(String path, String journalPath, Object lock, Supplier<Snapshot> copier) {
+    this(path, journalPath, lock, copier, false);
+  }
+
+  // A read-only copy is only read and replayed; it is never started
+  JournaledSnapshot(String path, String journalPath, Object lock, Supplier<Snapshot> copier, boolean readOnly) {
+    this.file = new File(path);
+    this.journal = new BookJournal(journalPath, readOnly);
+    this.lock = lock;
+    this.copier = copier;
+  }
+
+  boolean exists() {
+    return file.exists();
+  }
+
+  <T> T read(Reader<T> reader) throws IOException {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+      return reader.readFrom(in);
+    }
+  }
+
+  // Written to a temp file first so a crash never leaves a half-written snapshot
+  void write(Snapshot snapshot) throws IOException {
+    if (file.getParentFile() != null)
+      file.getParentFile().mkdirs();
+    File temp = new File(file.getPath() + ".tmp");
+    try (FileOutputStream fileOut = new FileOutputStream(temp)) {
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut, 1 << 16));
+      snapshot.writeTo(out);
+      out.flush();
+      fileOut.getFD().sync();
+    }
+    Files.move(temp.toPath(), file.toPath(),
+        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  void replay(BookJournal.Target target) {
+    journal.replay(target);
+  }
+
+  void start() {
+    compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "catalog-compactor");
+      thread.setDaemon(true);
+      return thread;
+    });
+    compactor.scheduleWithFixedDelay(this::compact, Constants.COMPACT_INTERVAL_MS,
+        Constants.COMPACT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    if (journal.hasRotatedSegment())
+      requestCompaction();
+  }
+
+  void logAdd(Book book) {
+    journal.logAdd(book);
+  }
+
+  void logRemove(String isbn) {
+    journal.logRemove(isbn);
+  }
+
+  void logUpdate(Book book) {
+    journal.logUpdate(book);
+  }
+
+  // Once per store operation, so a batch is committed in a single fsync
+  void changed() {
+    flusher.markDirty(journal);
+    if (journal.getRecordCount() >= Constants.JOURNAL_COMPACT_RECORDS
+        || journal.getSize() >= Constants.JOURNAL_COMPACT_BYTES)
+      requestCompaction();
+  }
+
+  CompletableFuture<Void> flush() {
+    return flusher.markDirty(journal);
+  }
+
+  private void requestCompaction() {
+    if (compactionQueued.compareAndSet(false, true))
+      compactor.execute(this::compact);
+  }
+
+  private void compact() {
+    compactionQueued.set(false);
+    Snapshot snapshot;
+    synchronized (lock) {
+      if (journal.getRecordCount() == 0 && !journal.hasRotatedSegment())
+        return;
+      snapshot = copier.get();
+      journal.rotate();
+    }
+    try {
+      write(snapshot);
+      journal.discardRotated();
+    } catch (IOException e) {
+      // The rotated segment is kept and replayed over the old snapshot
+      System.err.println("Error compacting catalog snapshot: " + e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,126 @@
+package dao;
+
+import models.Book;
+import models.Library;
+import utils.Constants;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+// Catalog served straight from the memory-mapped books.map file
+public class MappedBookStore implements BookStore {
+  private MappedCatalog mapped;
+  private WriteBehindFlusher flusher = WriteBehindFlusher.getInstance();
+  private WriteBehindFlusher.Sink mappedSink = () -> mapped.force();
+
+  // The first mapped start imports the existing snapshot and journal once,
+  // and the mapped file remembers it did; after that nothing is deserialized
+  // up front
+  public MappedBookStore() {
+    try {
+      mapped = new MappedCatalog(Constants.MAPPED_CATALOG_FILE);
+      if (!mapped.isImported()) {
+        Library existing = new BookJournal(Constants.JOURNAL_FILE)
+            .replay(new FileHandlerDAO().loadLibrary());
+        for (Book book : existing.getAllBooks())
+          mapped.add(book);
+        mapped.markImported();
+        mapped.force();
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Error opening mapped catalog", e);
+    }
+  }
+
+  @Override
+  public synchronized void addBook(Book book) {
+    try {
+      mapped.add(book);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    flusher.markDirty(mappedSink);
+  }
+
+  @Override
+  public synchronized void addBooks(List<Book> books) {
+    try {
+      for (Book book : books)
+        mapped.add(book);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    flusher.markDirty(mappedSink);
+  }
+
+  @Override
+  public synchronized boolean removeBook(String isbn) {
+    boolean removed = mapped.remove(isbn);
+    if (removed)
+      flusher.markDirty(mappedSink);
+    return removed;
+  }
+
+  @Override
+  public synchronized void updateBook(Book book) {
+    try {
+      mapped.updateLoan(book);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    flusher.markDirty(mappedSink);
+  }
+
+  @Override
+  public CompletableFuture<Void> flush() {
+    return flusher.markDirty(mappedSink);
+  }
+
+  @Override
+  public synchronized List<Book> getAllBooks() {
+    return mapped.scan(book -> true);
+  }
+
+  @Override
+  public synchronized void forEachBook(Consumer<Book> action) {
+    mapped.forEach(action);
+  }
+
+  @Override
+  public synchronized List<Book> getAvailableBooks() {
+    return mapped.scan(book -> !book.isIssued());
+  }
+
+  @Override
+  public synchronized List<Book> getIssuedBooks() {
+    return mapped.scan(Book::isIssued);
+  }
+
+  @Override
+  public synchronized List<Book> searchBooks(String keyword) {
+    String lowerKeyword = keyword.toLowerCase();
+    return mapped.scan(book -> Library.matches(book, keyword, lowerKeyword));
+  }
+
+  @Override
+  public synchronized Book findBookByIsbn(String isbn) {
+    return mapped.find(isbn);
+  }
+
+  @Override
+  public synchronized int getTotalBooks() {
+    return mapped.size();
+  }
+
+  @Override
+  public synchronized int getAvailableBooksCount() {
+    return mapped.size() - mapped.issuedCount();
+  }
+
+  @Override
+  public synchronized int getIssuedBooksCount() {
+    return mapped.issuedCount();
+  }
+}
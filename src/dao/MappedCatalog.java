@@ -0,0 +1,514 @@
+package dao;
+
+import models.Book;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+// Catalog kept in a memory-mapped file so a lookup decodes a single record
+// instead of loading the whole Library onto the heap.
+//
+// The file is a header followed by blocks of [int length][byte flags][body].
+// Book blocks start with a fixed-size loan area (dates and issuedTo) so issue
+// and return are written in place. The record directory is itself a block: an
+// open-addressed table of int offsets keyed by ISBN hash. When it fills up a
+// larger one is appended and the header repointed, so the file is never
+// replaced while mapped. A single mapping limits the file to 2 GB.
+//
+// A meta block records whether the legacy catalog was imported and how many
+// bytes are dead (removed or replaced records, old directories). Once half
+// the blocks are dead they are compacted without remapping another file: the
+// live records and a fresh directory are laid out past the end, the header is
+// pointed at that image's meta block, the image is copied down to the front
+// and the header pointed back. A crash in between is finished on the next
+// open from the image, which the copy never overwrites. The file keeps its
+// length and later appends reuse the reclaimed space.
+public class MappedCatalog {
+  private static final int MAGIC = 0x4C4D534D; // "LMSM"
+  private static final int INITIAL_CAPACITY = 1024;
+  private static final int INITIAL_DATA_SIZE = 1 << 20;
+
+  private static final int H_MAGIC = 0;
+  private static final int H_DIRECTORY = 4;
+  private static final int H_CAPACITY = 8;
+  private static final int H_USED = 12;
+  private static final int H_LIVE = 16;
+  private static final int H_ISSUED = 20;
+  static final int H_END = 24;
+  static final int H_META = 28;
+  static final int HEADER_SIZE = 32;
+
+  private static final int B_LENGTH = 0;
+  private static final int B_FLAGS = 4;
+  private static final int B_HEADER = 5;
+
+  private static final int R_ISSUE_DATE = B_HEADER;
+  private static final int R_DUE_DATE = R_ISSUE_DATE + 8;
+  private static final int R_ISSUED_TO_LENGTH = R_DUE_DATE + 8;
+  private static final int R_ISSUED_TO = R_ISSUED_TO_LENGTH + 1;
+  private static final int ISSUED_TO_BYTES = 64;
+  private static final int R_BODY = R_ISSUED_TO + ISSUED_TO_BYTES;
+
+  private static final int M_FLAGS = B_HEADER;
+  private static final int M_DEAD = M_FLAGS + 4;
+  // Set only in the meta block of a compacted image waiting to be copied down
+  private static final int M_PENDING = M_DEAD + 4;
+  private static final int M_PENDING_LENGTH = M_PENDING + 4;
+  private static final int M_DIRECTORY = M_PENDING_LENGTH + 4;
+  private static final int M_CAPACITY = M_DIRECTORY + 4;
+  private static final int META_SIZE = M_CAPACITY + 4;
+
+  private static final int META_IMPORTED = 1;
+  private static final int COMPACT_MIN_DEAD = 1 << 20;
+
+  private static final int FLAG_LIVE = 1;
+  private static final int FLAG_ISSUED = 2;
+  private static final int FLAG_ISSUED_TO = 4;
+  private static final int FLAG_ISSUE_DATE = 8;
+  private static final int FLAG_DUE_DATE = 16;
+  // issuedTo is too long for the loan area and follows the body instead
+  private static final int FLAG_LONG_ISSUED_TO = 32;
+
+  private static final int EMPTY = 0;
+  private static final int TOMBSTONE = -1;
+
+  private final File file;
+  private FileChannel channel;
+  private volatile MappedByteBuffer buffer;
+
+  public MappedCatalog(String path) throws IOException {
+    this.file = new File(path);
+    boolean fresh = !file.exists() || file.length() == 0;
+    if (file.getParentFile() != null)
+      file.getParentFile().mkdirs();
+    channel = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+        StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+
+    if (fresh) {
+      map(HEADER_SIZE + INITIAL_DATA_SIZE);
+      buffer.putInt(H_MAGIC, MAGIC);
+      buffer.putInt(H_END, HEADER_SIZE);
+      buffer.putInt(H_DIRECTORY, allocateDirectory(INITIAL_CAPACITY));
+      buffer.putInt(H_CAPACITY, INITIAL_CAPACITY);
+      buffer.putInt(H_META, allocateMeta(0, 0));
+    } else {
+      map(channel.size());
+      if (buffer.getInt(H_MAGIC) != MAGIC)
+        throw new IOException("Not a mapped catalog: " + file);
+      if (buffer.getInt(H_META) == 0)
+        addMeta();
+      else if (buffer.getInt(meta() + M_PENDING) != 0)
+        finishCompaction();
+    }
+  }
+
+  // False until the legacy snapshot and journal have been imported once, so
+  // a catalog emptied on purpose is not refilled from them
+  public boolean isImported() {
+    return (buffer.getInt(meta() + M_FLAGS) & META_IMPORTED) != 0;
+  }
+
+  public void markImported() {
+    buffer.putInt(meta() + M_FLAGS, buffer.getInt(meta() + M_FLAGS) | META_IMPORTED);
+  }
+
+  public int size() {
+    return buffer.getInt(H_LIVE);
+  }
+
+  public int issuedCount() {
+    return buffer.getInt(H_ISSUED);
+  }
+
+  public Book find(String isbn) {
+    int slot = findSlot(isbn);
+    return slot < 0 ? null : decode(slotValue(slot));
+  }
+
+  public void add(Book book) throws IOException {
+    remove(book.getIsbn());
+    if ((buffer.getInt(H_USED) + 1) * 4L > capacity() * 3L)
+      growDirectory();
+
+    byte[] body = encodeBody(book);
+    int offset = allocate(R_BODY + body.length);
+    buffer.put(offset + B_FLAGS, (byte) FLAG_LIVE);
+    writeLoan(offset, book);
+    buffer.position(offset + R_BODY);
+    buffer.put(body);
+    insertSlot(book.getIsbn(), offset);
+    buffer.putInt(H_LIVE, size() + 1);
+  }
+
+  public boolean remove(String isbn) {
+    int slot = findSlot(isbn);
+    if (slot < 0)
+      return false;
+
+    int offset = slotValue(slot);
+    if (isIssued(offset))
+      buffer.putInt(H_ISSUED, issuedCount() - 1);
+    buffer.put(offset + B_FLAGS, (byte) 0);
+    buffer.putInt(slotPosition(slot), TOMBSTONE);
+    buffer.putInt(H_LIVE, size() - 1);
+    addDead(buffer.getInt(offset + B_LENGTH));
+    return true;
+  }
+
+  // Rewrites only the loan area; a record whose issuedTo no longer fits
+  // (or that is missing) is appended afresh instead
+  public void updateLoan(Book book) throws IOException {
+    int slot = findSlot(book.getIsbn());
+    byte[] issuedTo = book.getIssuedTo() != null ? book.getIssuedTo().getBytes(StandardCharsets.UTF_8) : new byte[0];
+    if (slot < 0 || issuedTo.length > ISSUED_TO_BYTES) {
+      add(book);
+      return;
+    }
+    writeLoan(slotValue(slot), book);
+  }
+
+  public List<Book> scan(Predicate<Book> filter) {
+    List<Book> result = new ArrayList<>();
+    forEach(book -> {
+      if (filter.test(book))
+        result.add(book);
+    });
+    return result;
+  }
+
+  // Walks the blocks in append order, decoding only live records
+  public void forEach(Consumer<Book> action) {
+    int end = buffer.getInt(H_END);
+    for (int offset = HEADER_SIZE; offset < end; offset += buffer.getInt(offset + B_LENGTH)) {
+      if ((buffer.get(offset + B_FLAGS) & FLAG_LIVE) != 0)
+        action.accept(decode(offset));
+    }
+  }
+
+  // Safe to call from the flusher thread; a remapped buffer is picked up on the next call
+  public void force() {
+    buffer.force();
+  }
+
+  public void close() {
+    try {
+      buffer.force();
+      channel.close();
+    } catch (IOException e) {
+      System.err.println("Error closing catalog: " + e.getMessage());
+    }
+  }
+
+  private void writeLoan(int offset, Book book) {
+    boolean wasIssued = isIssued(offset);
+    int flags = FLAG_LIVE;
+    if (book.isIssued())
+      flags |= FLAG_ISSUED;
+    if (book.getIssueDate() != null)
+      flags |= FLAG_ISSUE_DATE;
+    if (book.getDueDate() != null)
+      flags |= FLAG_DUE_DATE;
+
+    byte[] issuedTo = new byte[0];
+    if (book.getIssuedTo() != null) {
+      flags |= FLAG_ISSUED_TO;
+      issuedTo = book.getIssuedTo().getBytes(StandardCharsets.UTF_8);
+      if (issuedTo.length > ISSUED_TO_BYTES) {
+        flags |= FLAG_LONG_ISSUED_TO;
+        issuedTo = new byte[0];
+      }
+    }
+
+    buffer.putLong(offset + R_ISSUE_DATE, book.getIssueDate() != null ? book.getIssueDate().getTime() : 0);
+    buffer.putLong(offset + R_DUE_DATE, book.getDueDate() != null ? book.getDueDate().getTime() : 0);
+    buffer.put(offset + R_ISSUED_TO_LENGTH, (byte) issuedTo.length);
+    buffer.position(offset + R_ISSUED_TO);
+    buffer.put(issuedTo);
+    buffer.put(offset + B_FLAGS, (byte) flags);
+
+    if (wasIssued != book.isIssued())
+      buffer.putInt(H_ISSUED, issuedCount() + (book.isIssued() ? 1 : -1));
+  }
+
+  private boolean isIssued(int offset) {
+    return (buffer.get(offset + B_FLAGS) & FLAG_ISSUED) != 0;
+  }
+
+  private Book decode(int offset) {
+    try {
+      DataInputStream body = new DataInputStream(new ByteArrayInputStream(readBody(offset)));
+      Book book = new Book(RecordCodec.readString(body), RecordCodec.readString(body),
+          RecordCodec.readString(body), RecordCodec.readString(body));
+      int flags = buffer.get(offset + B_FLAGS);
+      book.setIssued((flags & FLAG_ISSUED) != 0);
+      if ((flags & FLAG_LONG_ISSUED_TO) != 0) {
+        book.setIssuedTo(RecordCodec.readString(body));
+      } else if ((flags & FLAG_ISSUED_TO) != 0) {
+        byte[] issuedTo = new byte[buffer.get(offset + R_ISSUED_TO_LENGTH)];
+        buffer.position(offset + R_ISSUED_TO);
+        buffer.get(issuedTo);
+        book.setIssuedTo(new String(issuedTo, StandardCharsets.UTF_8));
+      }
+      if ((flags & FLAG_ISSUE_DATE) != 0)
+        book.setIssueDate(new Date(buffer.getLong(offset + R_ISSUE_DATE)));
+      if ((flags & FLAG_DUE_DATE) != 0)
+        book.setDueDate(new Date(buffer.getLong(offset + R_DUE_DATE)));
+      return book;
+    } catch (IOException e) {
+      throw new UncheckedIOException("Corrupt catalog record at " + offset, e);
+    }
+  }
+
+  private String readIsbn(int offset) {
+    try {
+      return RecordCodec.readString(new DataInputStream(new ByteArrayInputStream(readBody(offset))));
+    } catch (IOException e) {
+      throw new UncheckedIOException("Corrupt catalog record at " + offset, e);
+    }
+  }
+
+  private byte[] readBody(int offset) {
+    byte[] body = new byte[buffer.getInt(offset + B_LENGTH) - R_BODY];
+    buffer.position(offset + R_BODY);
+    buffer.get(body);
+    return body;
+  }
+
+  private byte[] encodeBody(Book book) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(96);
+    DataOutputStream out = new DataOutputStream(bytes);
+    RecordCodec.writeString(out, book.getIsbn());
+    RecordCodec.writeString(out, book.getTitle());
+    RecordCodec.writeString(out, book.getAuthor());
+    RecordCodec.writeString(out, book.getGenre());
+    if (book.getIssuedTo() != null && book.getIssuedTo().getBytes(StandardCharsets.UTF_8).length > ISSUED_TO_BYTES)
+      RecordCodec.writeString(out, book.getIssuedTo());
+    return bytes.toByteArray();
+  }
+
+  // Directory slots
+
+  private int capacity() {
+    return buffer.getInt(H_CAPACITY);
+  }
+
+  private int slotPosition(int slot) {
+    return buffer.getInt(H_DIRECTORY) + B_HEADER + slot * 4;
+  }
+
+  private int slotValue(int slot) {
+    return buffer.getInt(slotPosition(slot));
+  }
+
+  private static int hash(String isbn) {
+    int h = isbn.hashCode();
+    return h ^ (h >>> 16);
+  }
+
+  private int findSlot(String isbn) {
+    int mask = capacity() - 1;
+    for (int slot = hash(isbn) & mask;; slot = (slot + 1) & mask) {
+      int offset = slotValue(slot);
+      if (offset == EMPTY)
+        return -1;
+      if (offset != TOMBSTONE && isbn.equals(readIsbn(offset)))
+        return slot;
+    }
+  }
+
+  private void insertSlot(String isbn, int offset) {
+    int mask = capacity() - 1;
+    int slot = hash(isbn) & mask;
+    while (slotValue(slot) != EMPTY && slotValue(slot) != TOMBSTONE)
+      slot = (slot + 1) & mask;
+    if (slotValue(slot) == EMPTY)
+      buffer.putInt(H_USED, buffer.getInt(H_USED) + 1);
+    buffer.putInt(slotPosition(slot), offset);
+  }
+
+  // Appends a directory twice the size, rehashes live entries into it and
+  // only then repoints the header; the old directory becomes dead space
+  private void growDirectory() throws IOException {
+    int oldDirectory = buffer.getInt(H_DIRECTORY);
+    int oldCapacity = capacity();
+    int newCapacity = oldCapacity * 2;
+    int newDirectory = allocateDirectory(newCapacity);
+
+    int mask = newCapacity - 1;
+    for (int i = 0; i < oldCapacity; i++) {
+      int offset = buffer.getInt(oldDirectory + B_HEADER + i * 4);
+      if (offset == EMPTY || offset == TOMBSTONE)
+        continue;
+      int slot = hash(readIsbn(offset)) & mask;
+      while (buffer.getInt(newDirectory + B_HEADER + slot * 4) != EMPTY)
+        slot = (slot + 1) & mask;
+      buffer.putInt(newDirectory + B_HEADER + slot * 4, offset);
+    }
+
+    buffer.putInt(H_USED, size());
+    buffer.putInt(H_CAPACITY, newCapacity);
+    buffer.putInt(H_DIRECTORY, newDirectory);
+    addDead(buffer.getInt(oldDirectory + B_LENGTH));
+  }
+
+  // Meta block
+
+  private int meta() {
+    return buffer.getInt(H_META);
+  }
+
+  private int allocateMeta(int flags, int dead) throws IOException {
+    int offset = allocate(META_SIZE);
+    buffer.put(offset + B_FLAGS, (byte) 0);
+    buffer.putInt(offset + M_FLAGS, flags);
+    buffer.putInt(offset + M_DEAD, dead);
+    buffer.putInt(offset + M_PENDING, 0);
+    buffer.putInt(offset + M_PENDING_LENGTH, 0);
+    buffer.putInt(offset + M_DIRECTORY, 0);
+    buffer.putInt(offset + M_CAPACITY, 0);
+    return offset;
+  }
+
+  // Files written before the meta block get one: a catalog with books in it
+  // was imported back then, and its dead bytes are counted once by walking
+  // the blocks
+  private void addMeta() throws IOException {
+    int dead = 0;
+    int directory = buffer.getInt(H_DIRECTORY);
+    int end = buffer.getInt(H_END);
+    for (int offset = HEADER_SIZE; offset < end; offset += buffer.getInt(offset + B_LENGTH)) {
+      if ((buffer.get(offset + B_FLAGS) & FLAG_LIVE) == 0 && offset != directory)
+        dead += buffer.getInt(offset + B_LENGTH);
+    }
+    buffer.putInt(H_META, allocateMeta(size() > 0 ? META_IMPORTED : 0, dead));
+    buffer.force();
+  }
+
+  private void addDead(int length) {
+    int dead = buffer.getInt(meta() + M_DEAD) + length;
+    buffer.putInt(meta() + M_DEAD, dead);
+    int used = buffer.getInt(H_END) - HEADER_SIZE;
+    if (dead >= COMPACT_MIN_DEAD && dead > used / 2) {
+      try {
+        compact();
+      } catch (IOException e) {
+        System.err.println("Error compacting catalog: " + e.getMessage());
+      }
+    }
+  }
+
+  // Lays the live records out past the end exactly as they will sit at the
+  // front, with a directory and a meta block pointing at their final places
+  private void compact() throws IOException {
+    int end = buffer.getInt(H_END);
+    int capacity = capacity();
+    int live = 0;
+    for (int offset = HEADER_SIZE; offset < end; offset += buffer.getInt(offset + B_LENGTH)) {
+      if ((buffer.get(offset + B_FLAGS) & FLAG_LIVE) != 0)
+        live += buffer.getInt(offset + B_LENGTH);
+    }
+    int directoryLength = B_HEADER + capacity * 4;
+    long length = (long) live + directoryLength + META_SIZE;
+    if (HEADER_SIZE + length > end)
+      return;
+    if (end + length > Integer.MAX_VALUE)
+      throw new IOException("Catalog file exceeds the 2 GB mapping limit");
+    if (end + length > buffer.capacity())
+      map(Math.min(Integer.MAX_VALUE, Math.max(end + length, buffer.capacity() * 2L)));
+
+    ByteBuffer image = buffer.duplicate();
+    image.position(end);
+    int shift = end - HEADER_SIZE;
+    for (int offset = HEADER_SIZE; offset < end; offset += buffer.getInt(offset + B_LENGTH)) {
+      if ((buffer.get(offset + B_FLAGS) & FLAG_LIVE) != 0) {
+        ByteBuffer block = buffer.duplicate();
+        block.position(offset).limit(offset + buffer.getInt(offset + B_LENGTH));
+        image.put(block);
+      }
+    }
+
+    int directory = image.position();
+    buffer.putInt(directory + B_LENGTH, directoryLength);
+    buffer.put(directory + B_FLAGS, (byte) 0);
+    for (int i = 0; i < capacity; i++)
+      buffer.putInt(directory + B_HEADER + i * 4, EMPTY);
+    int mask = capacity - 1;
+    for (int offset = end; offset < directory; offset += buffer.getInt(offset + B_LENGTH)) {
+      int slot = hash(readIsbn(offset)) & mask;
+      while (buffer.getInt(directory + B_HEADER + slot * 4) != EMPTY)
+        slot = (slot + 1) & mask;
+      buffer.putInt(directory + B_HEADER + slot * 4, offset - shift);
+    }
+
+    int meta = directory + directoryLength;
+    buffer.putInt(meta + B_LENGTH, META_SIZE);
+    buffer.put(meta + B_FLAGS, (byte) 0);
+    buffer.putInt(meta + M_FLAGS, buffer.getInt(meta() + M_FLAGS));
+    buffer.putInt(meta + M_DEAD, 0);
+    buffer.putInt(meta + M_PENDING, end);
+    buffer.putInt(meta + M_PENDING_LENGTH, (int) length);
+    buffer.putInt(meta + M_DIRECTORY, directory - shift);
+    buffer.putInt(meta + M_CAPACITY, capacity);
+    buffer.force();
+    buffer.putInt(H_META, meta);
+    buffer.force();
+    finishCompaction();
+  }
+
+  // Copies the pending image to the front and points the header at it; safe
+  // to repeat, since the image itself is not touched
+  private void finishCompaction() {
+    int pending = meta();
+    int from = buffer.getInt(pending + M_PENDING);
+    int length = buffer.getInt(pending + M_PENDING_LENGTH);
+    ByteBuffer image = buffer.duplicate();
+    image.position(from).limit(from + length);
+    ByteBuffer front = buffer.duplicate();
+    front.position(HEADER_SIZE);
+    front.put(image);
+
+    int meta = pending - from + HEADER_SIZE;
+    buffer.putInt(H_DIRECTORY, buffer.getInt(meta + M_DIRECTORY));
+    buffer.putInt(H_CAPACITY, buffer.getInt(meta + M_CAPACITY));
+    buffer.putInt(H_USED, size());
+    buffer.putInt(H_END, HEADER_SIZE + length);
+    buffer.putInt(meta + M_PENDING, 0);
+    buffer.force();
+    buffer.putInt(H_META, meta);
+    buffer.force();
+  }
+
+  private int allocateDirectory(int capacity) throws IOException {
+    int offset = allocate(B_HEADER + capacity * 4);
+    buffer.put(offset + B_FLAGS, (byte) 0);
+    for (int i = 0; i < capacity; i++)
+      buffer.putInt(offset + B_HEADER + i * 4, EMPTY);
+    return offset;
+  }
+
+  private int allocate(int length) throws IOException {
+    int offset = buffer.getInt(H_END);
+    long needed = (long) offset + length;
+    if (needed > buffer.capacity()) {
+      long grown = Math.max(needed, buffer.capacity() * 2L);
+      if (grown > Integer.MAX_VALUE)
+        throw new IOException("Catalog file exceeds the 2 GB mapping limit");
+      map(grown);
+    }
+    buffer.putInt(offset + B_LENGTH, length);
+    buffer.putInt(H_END, offset + length);
+    return offset;
+  }
+
+  private void map(long size) throws IOException {
+    buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+  }
+}
@@ -0,0 +1,161 @@
+package dao;
+
+import models.Book;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+// Runs random adds, removes and loan updates against a MappedCatalog and a
+// LinkedHashMap model, and compares them after every round, including after
+// reopening the file. The records are large enough that compaction runs
+// many times. It then crashes one compaction after its image is written but
+// before it is copied down, with the front half overwritten, and checks that
+// the next open finishes it.
+// Usage: java -cp bin dao.MappedCatalogCheck [operations]
+public class MappedCatalogCheck {
+  private static final int ROUND = 20_000;
+  private static final int ISBNS = 8_000;
+  private static final String PADDING = "x".repeat(200);
+
+  private final Map<String, String> model = new LinkedHashMap<>();
+  private final Random random = new Random(1);
+  private final File file;
+  private MappedCatalog catalog;
+  private MappedByteBuffer header;
+  private int compactions;
+
+  private MappedCatalogCheck(File file) throws IOException {
+    this.file = file;
+    catalog = new MappedCatalog(file.getPath());
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      header = channel.map(FileChannel.MapMode.READ_ONLY, 0, MappedCatalog.HEADER_SIZE);
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    int operations = args.length > 0 ? Integer.parseInt(args[0]) : 600_000;
+    File file = File.createTempFile("catalog-check", ".map");
+    file.deleteOnExit();
+    MappedCatalogCheck check = new MappedCatalogCheck(file);
+    int reopens = 0;
+    for (int round = 1; round * ROUND <= operations; round++) {
+      for (int i = 0; i < ROUND; i++)
+        check.randomOperation();
+      check.verify();
+      if (round % 5 == 0) {
+        check.reopen();
+        check.verify();
+        reopens++;
+      }
+    }
+    System.out.printf("%,d operations, %d compactions, %d reopens: %d books match%n",
+        operations, check.compactions, reopens, check.model.size());
+
+    check.crashMidCompaction();
+    check.verify();
+    for (int i = 0; i < ROUND; i++)
+      check.randomOperation();
+    check.verify();
+    System.out.printf("Compaction interrupted before the copy was redone on open: %d books match%n",
+        check.model.size());
+    check.catalog.close();
+  }
+
+  private void randomOperation() throws IOException {
+    String isbn = "I" + random.nextInt(ISBNS);
+    int operation = random.nextInt(10);
+    int end = header.getInt(MappedCatalog.H_END);
+    if (operation < 4) {
+      add(isbn);
+    } else if (operation < 6) {
+      catalog.remove(isbn);
+      model.remove(isbn);
+    } else if (model.containsKey(isbn)) {
+      // One in five borrowers does not fit the loan area, so the record
+      // is appended again and moves to the end
+      Book book = catalog.find(isbn);
+      String issuedTo = random.nextInt(5) == 0 ? "u".repeat(70) : "u" + random.nextInt(100);
+      book.setIssued(true);
+      book.setIssuedTo(issuedTo);
+      catalog.updateLoan(book);
+      if (issuedTo.length() > 64)
+        model.remove(isbn);
+      model.put(isbn, book.getTitle() + "|" + issuedTo);
+    }
+    if (header.getInt(MappedCatalog.H_END) < end)
+      compactions++;
+  }
+
+  private void add(String isbn) throws IOException {
+    Book book = new Book(isbn, "T" + random.nextInt() + PADDING, "A", "G");
+    catalog.add(book);
+    model.remove(isbn);
+    model.put(isbn, book.getTitle() + "|null");
+  }
+
+  private void reopen() throws IOException {
+    catalog.close();
+    catalog = new MappedCatalog(file.getPath());
+  }
+
+  // Churns until a compaction has run, then puts the file back in the state
+  // a crash between writing the image and copying it down leaves: the
+  // header points at the image's meta block, which still marks it pending
+  private void crashMidCompaction() throws IOException {
+    int before = compactions;
+    int end;
+    do {
+      end = header.getInt(MappedCatalog.H_END);
+      // Only a remove may compact, so nothing is written after the image
+      String isbn = "I" + random.nextInt(ISBNS);
+      if (model.containsKey(isbn)) {
+        catalog.remove(isbn);
+        model.remove(isbn);
+      } else {
+        add(isbn);
+      }
+      if (header.getInt(MappedCatalog.H_END) < end)
+        compactions++;
+    } while (compactions == before);
+    catalog.close();
+
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+      // The image was laid out from the old end exactly as it now sits at the front
+      int imageMeta = buffer.getInt(MappedCatalog.H_META) - MappedCatalog.HEADER_SIZE + end;
+      buffer.putInt(MappedCatalog.H_META, imageMeta);
+      int copied = (buffer.getInt(MappedCatalog.H_END) + MappedCatalog.HEADER_SIZE) / 2;
+      for (int i = MappedCatalog.HEADER_SIZE; i < copied; i++)
+        buffer.put(i, (byte) 7);
+      buffer.force();
+    }
+    catalog = new MappedCatalog(file.getPath());
+  }
+
+  private void verify() {
+    List<String> expected = new ArrayList<>(model.size());
+    model.forEach((isbn, value) -> expected.add(isbn + "|" + value));
+    List<String> actual = new ArrayList<>(model.size());
+    catalog.forEach(book -> actual.add(describe(book)));
+    if (!actual.equals(expected))
+      throw new IllegalStateException("Catalog order or contents differ from the model");
+    if (catalog.size() != model.size())
+      throw new IllegalStateException("Size " + catalog.size() + ", expected " + model.size());
+    for (Map.Entry<String, String> entry : model.entrySet()) {
+      Book book = catalog.find(entry.getKey());
+      if (book == null || !describe(book).equals(entry.getKey() + "|" + entry.getValue()))
+        throw new IllegalStateException("Lookup of " + entry.getKey() + " differs from the model");
+    }
+  }
+
+  private static String describe(Book book) {
+    return book.getIsbn() + "|" + book.getTitle() + "|" + book.getIssuedTo();
+  }
+}
@@ -0,0 +1,145 @@
+package dao;
+
+import models.Book;
+import models.Library;
+import utils.Constants;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+// Catalog held off the Java heap in an OffHeapCatalog, persisted as a record
+// snapshot (books.off) plus a journal of the changes since it was written.
+// Books handed out are decoded for the call, as with the mapped store. The
+// first off-heap start imports the existing snapshot and journal once.
+public class OffHeapBookStore implements BookStore {
+  private OffHeapCatalog catalog;
+  private final JournaledSnapshot persistence;
+
+  public OffHeapBookStore() {
+    this(false);
+  }
+
+  public OffHeapBookStore(boolean readOnly) {
+    persistence = new JournaledSnapshot(Constants.OFFHEAP_CATALOG_FILE, Constants.OFFHEAP_JOURNAL_FILE,
+        this, () -> catalog.snapshot(), readOnly);
+    int slabBytes = Constants.OFFHEAP_SLAB_MB << 20;
+    try {
+      if (persistence.exists()) {
+        catalog = persistence.read(in -> OffHeapCatalog.readFrom(in, slabBytes));
+      } else {
+        catalog = new OffHeapCatalog(slabBytes);
+        Library existing = new BookJournal(Constants.JOURNAL_FILE, readOnly)
+            .replay(new FileHandlerDAO().loadLibrary());
+        existing.forEachBook(catalog::add);
+        if (!readOnly)
+          persistence.write(catalog.snapshot());
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Error opening off-heap catalog", e);
+    }
+    persistence.replay(new BookJournal.Target() {
+      @Override
+      public void add(Book book) {
+        catalog.add(book);
+      }
+
+      @Override
+      public void update(Book book) {
+        catalog.updateLoan(book);
+      }
+
+      @Override
+      public void remove(String isbn) {
+        catalog.remove(isbn);
+      }
+    });
+    if (!readOnly)
+      persistence.start();
+  }
+
+  @Override
+  public synchronized void addBook(Book book) {
+    catalog.add(book);
+    persistence.logAdd(book);
+    persistence.changed();
+  }
+
+  @Override
+  public synchronized void addBooks(List<Book> books) {
+    for (Book book : books) {
+      catalog.add(book);
+      persistence.logAdd(book);
+    }
+    persistence.changed();
+  }
+
+  @Override
+  public synchronized boolean removeBook(String isbn) {
+    boolean removed = catalog.remove(isbn);
+    if (removed) {
+      persistence.logRemove(isbn);
+      persistence.changed();
+    }
+    return removed;
+  }
+
+  @Override
+  public synchronized void updateBook(Book book) {
+    catalog.updateLoan(book);
+    persistence.logUpdate(book);
+    persistence.changed();
+  }
+
+  @Override
+  public CompletableFuture<Void> flush() {
+    return persistence.flush();
+  }
+
+  @Override
+  public synchronized List<Book> getAllBooks() {
+    return catalog.scan(book -> true);
+  }
+
+  @Override
+  public synchronized void forEachBook(Consumer<Book> action) {
+    catalog.forEach(action);
+  }
+
+  @Override
+  public synchronized List<Book> getAvailableBooks() {
+    return catalog.scanIssued(false);
+  }
+
+  @Override
+  public synchronized List<Book> getIssuedBooks() {
+    return catalog.scanIssued(true);
+  }
+
+  @Override
+  public synchronized List<Book> searchBooks(String keyword) {
+    String lowerKeyword = keyword.toLowerCase();
+    return catalog.scan(book -> Library.matches(book, keyword, lowerKeyword));
+  }
+
+  @Override
+  public synchronized Book findBookByIsbn(String isbn) {
+    return catalog.find(isbn);
+  }
+
+  @Override
+  public synchronized int getTotalBooks() {
+    return catalog.size();
+  }
+
+  @Override
+  public synchronized int getAvailableBooksCount() {
+    return catalog.size() - catalog.issuedCount();
+  }
+
+  @Override
+  public synchronized int getIssuedBooksCount() {
+    return catalog.issuedCount();
+  }
+}
@@ -0,0 +1,474 @@
+package dao;
+
+import models.Book;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+// Catalog records kept outside the Java heap in direct ByteBuffer slabs, so
+// however large the catalog grows the collector only ever sees the slab and
+// table buffers, never one object per book.
+//
+// Records are blocks from a slab allocator with size classes (16-byte steps
+// up to 4 KB, powers of two above) and a free list per class threaded
+// through the free blocks, so the space of a removed or moved record is
+// reused. Records are doubly linked in catalog order. The ISBN directory is
+// an open-addressed table of record addresses, also off-heap. An address is
+// the slab index in the high 32 bits and the offset in the low 32.
+class OffHeapCatalog {
+  private static final long NONE = -1;
+  private static final int SMALL_STEP = 16;
+  private static final int SMALL_LIMIT = 4096;
+  private static final int SMALL_CLASSES = SMALL_LIMIT / SMALL_STEP;
+  private static final int NULL_LENGTH = 0xFFFF;
+  private static final int MAX_TABLE_SLOTS = 1 << 27;
+
+  private static final int R_CLASS = 0;
+  private static final int R_HASH = 4;
+  private static final int R_PREV = 8;
+  private static final int R_NEXT = 16;
+  private static final int R_FLAGS = 24;
+  private static final int R_ISSUE_DATE = 25;
+  private static final int R_DUE_DATE = 33;
+  private static final int R_STRINGS = 41;
+  // A free block keeps the next free block of its class where R_PREV was
+  private static final int F_NEXT = R_PREV;
+
+  private static final int FLAG_ISSUED = 1;
+  private static final int FLAG_ISSUE_DATE = 2;
+  private static final int FLAG_DUE_DATE = 4;
+
+  private final int slabBytes;
+  private ByteBuffer[] slabs = new ByteBuffer[4];
+  // Marked for every slab when a snapshot is taken; see writable
+  private boolean[] shared = new boolean[4];
+  private AtomicBoolean snapshotReading = new AtomicBoolean();
+  private int slabCount;
+  private int slabTop;
+  private final long[] freeLists = new long[SMALL_CLASSES + 20];
+  private long head = NONE;
+  private long tail = NONE;
+  private int size;
+  private int issuedCount;
+  // Slot i holds address + 1 of a record, 0 when free
+  private ByteBuffer table = ByteBuffer.allocateDirect(16 * 8);
+  private int tableSlots = 16;
+
+  OffHeapCatalog(int slabBytes) {
+    this.slabBytes = slabBytes;
+    Arrays.fill(freeLists, NONE);
+  }
+
+  int size() {
+    return size;
+  }
+
+  int issuedCount() {
+    return issuedCount;
+  }
+
+  // A book whose ISBN is already in the catalog replaces it and moves to the end
+  void add(Book book) {
+    byte[][] fields = fields(book);
+    int hash = hash(fields[0]);
+    int slot = slotOf(fields[0], hash);
+    long existing = table.getLong(slot * 8) - 1;
+    if (existing != NONE) {
+      unlinkOrder(existing);
+      release(existing);
+      deleteSlot(slot);
+    }
+
+    long address = allocate(recordSize(fields));
+    write(address, hash, book, fields);
+    linkLast(address);
+    insertSlot(address, hash);
+  }
+
+  // Rewrites the record in place when the new loan state still fits its
+  // block; otherwise it moves to a larger block in the same catalog position
+  void updateLoan(Book book) {
+    byte[][] fields = fields(book);
+    int hash = hash(fields[0]);
+    int slot = slotOf(fields[0], hash);
+    long existing = table.getLong(slot * 8) - 1;
+    if (existing == NONE) {
+      add(book);
+      return;
+    }
+
+    if (isIssued(existing))
+      issuedCount--;
+    size--;
+    int length = recordSize(fields);
+    if (blockSize(slab(existing).getInt(offset(existing) + R_CLASS)) >= length) {
+      write(existing, hash, book, fields);
+      return;
+    }
+    long moved = allocate(length);
+    write(moved, hash, book, fields);
+    long prev = slab(existing).getLong(offset(existing) + R_PREV);
+    long next = slab(existing).getLong(offset(existing) + R_NEXT);
+    setLink(moved, prev, next);
+    if (prev == NONE)
+      head = moved;
+    else
+      writable(prev).putLong(offset(prev) + R_NEXT, moved);
+    if (next == NONE)
+      tail = moved;
+    else
+      writable(next).putLong(offset(next) + R_PREV, moved);
+    table.putLong(slot * 8, moved + 1);
+    free(existing);
+  }
+
+  boolean remove(String isbn) {
+    byte[] key = utf8(isbn);
+    int slot = slotOf(key, hash(key));
+    long address = table.getLong(slot * 8) - 1;
+    if (address == NONE)
+      return false;
+    unlinkOrder(address);
+    release(address);
+    deleteSlot(slot);
+    return true;
+  }
+
+  Book find(String isbn) {
+    byte[] key = utf8(isbn);
+    long address = table.getLong(slotOf(key, hash(key)) * 8) - 1;
+    return address == NONE ? null : decode(slabs, address);
+  }
+
+  void forEach(Consumer<Book> action) {
+    for (long address = head; address != NONE; address = slab(address).getLong(offset(address) + R_NEXT))
+      action.accept(decode(slabs, address));
+  }
+
+  List<Book> scan(Predicate<Book> filter) {
+    List<Book> result = new ArrayList<>();
+    forEach(book -> {
+      if (filter.test(book))
+        result.add(book);
+    });
+    return result;
+  }
+
+  // Checks the flag before decoding, so only the matching records become Books
+  List<Book> scanIssued(boolean issued) {
+    List<Book> result = new ArrayList<>(issued ? issuedCount : size - issuedCount);
+    for (long address = head; address != NONE; address = slab(address).getLong(offset(address) + R_NEXT)) {
+      if (isIssued(address) == issued)
+        result.add(decode(slabs, address));
+    }
+    return result;
+  }
+
+  // Taken while the caller holds the store's lock, as read-only views of the
+  // slabs rather than copies; they are walked and written after the lock is
+  // released, and only the slabs changed before that are copied (see writable)
+  JournaledSnapshot.Snapshot snapshot() {
+    ByteBuffer[] views = new ByteBuffer[slabCount];
+    for (int i = 0; i < slabCount; i++) {
+      views[i] = slabs[i].asReadOnlyBuffer();
+      shared[i] = true;
+    }
+    AtomicBoolean reading = new AtomicBoolean(true);
+    snapshotReading = reading;
+    long first = head;
+    int count = size;
+    return out -> {
+      try {
+        RecordCodec.writeHeader(out);
+        out.writeInt(count);
+        for (long address = first; address != NONE; address = views[(int) (address >>> 32)].getLong((int) address + R_NEXT))
+          RecordCodec.writeBook(out, decode(views, address));
+      } finally {
+        reading.set(false);
+      }
+    };
+  }
+
+  static OffHeapCatalog readFrom(DataInputStream in, int slabBytes) throws IOException {
+    RecordCodec.readHeader(in);
+    OffHeapCatalog catalog = new OffHeapCatalog(slabBytes);
+    for (int i = in.readInt(); i > 0; i--)
+      catalog.add(RecordCodec.readBook(in));
+    return catalog;
+  }
+
+  // Records
+
+  private static byte[][] fields(Book book) {
+    return new byte[][] { utf8(book.getIsbn()), utf8(book.getTitle()), utf8(book.getAuthor()),
+        utf8(book.getGenre()), utf8(book.getIssuedTo()) };
+  }
+
+  private static int recordSize(byte[][] fields) {
+    int length = R_STRINGS;
+    for (byte[] field : fields)
+      length += 2 + (field == null ? 0 : field.length);
+    return length;
+  }
+
+  // Keeps the block's class and catalog links; counts the book as live
+  private void write(long address, int hash, Book book, byte[][] fields) {
+    ByteBuffer slab = writable(address);
+    int offset = offset(address);
+    int flags = 0;
+    if (book.isIssued())
+      flags |= FLAG_ISSUED;
+    if (book.getIssueDate() != null)
+      flags |= FLAG_ISSUE_DATE;
+    if (book.getDueDate() != null)
+      flags |= FLAG_DUE_DATE;
+    slab.putInt(offset + R_HASH, hash);
+    slab.put(offset + R_FLAGS, (byte) flags);
+    slab.putLong(offset + R_ISSUE_DATE, book.getIssueDate() != null ? book.getIssueDate().getTime() : 0);
+    slab.putLong(offset + R_DUE_DATE, book.getDueDate() != null ? book.getDueDate().getTime() : 0);
+    int position = offset + R_STRINGS;
+    for (byte[] field : fields) {
+      if (field == null) {
+        slab.putChar(position, (char) NULL_LENGTH);
+        position += 2;
+        continue;
+      }
+      slab.putChar(position, (char) field.length);
+      slab.put(position + 2, field);
+      position += 2 + field.length;
+    }
+    size++;
+    if (book.isIssued())
+      issuedCount++;
+  }
+
+  private static Book decode(ByteBuffer[] slabs, long address) {
+    ByteBuffer slab = slabs[(int) (address >>> 32)];
+    int offset = (int) address;
+    String[] values = new String[5];
+    int position = offset + R_STRINGS;
+    for (int i = 0; i < values.length; i++) {
+      int length = slab.getChar(position);
+      position += 2;
+      if (length == NULL_LENGTH)
+        continue;
+      byte[] bytes = new byte[length];
+      slab.get(position, bytes);
+      values[i] = new String(bytes, StandardCharsets.UTF_8);
+      position += length;
+    }
+    Book book = new Book(values[0], values[1], values[2], values[3]);
+    int flags = slab.get(offset + R_FLAGS);
+    book.setIssued((flags & FLAG_ISSUED) != 0);
+    book.setIssuedTo(values[4]);
+    if ((flags & FLAG_ISSUE_DATE) != 0)
+      book.setIssueDate(new Date(slab.getLong(offset + R_ISSUE_DATE)));
+    if ((flags & FLAG_DUE_DATE) != 0)
+      book.setDueDate(new Date(slab.getLong(offset + R_DUE_DATE)));
+    return book;
+  }
+
+  private boolean isIssued(long address) {
+    return (slab(address).get(offset(address) + R_FLAGS) & FLAG_ISSUED) != 0;
+  }
+
+  private boolean isbnEquals(long address, byte[] isbn) {
+    ByteBuffer slab = slab(address);
+    int position = offset(address) + R_STRINGS;
+    if (slab.getChar(position) != isbn.length)
+      return false;
+    for (int i = 0; i < isbn.length; i++) {
+      if (slab.get(position + 2 + i) != isbn[i])
+        return false;
+    }
+    return true;
+  }
+
+  // Catalog order
+
+  private void linkLast(long address) {
+    setLink(address, tail, NONE);
+    if (tail == NONE)
+      head = address;
+    else
+      writable(tail).putLong(offset(tail) + R_NEXT, address);
+    tail = address;
+  }
+
+  private void unlinkOrder(long address) {
+    long prev = slab(address).getLong(offset(address) + R_PREV);
+    long next = slab(address).getLong(offset(address) + R_NEXT);
+    if (prev == NONE)
+      head = next;
+    else
+      writable(prev).putLong(offset(prev) + R_NEXT, next);
+    if (next == NONE)
+      tail = prev;
+    else
+      writable(next).putLong(offset(next) + R_PREV, prev);
+  }
+
+  private void setLink(long address, long prev, long next) {
+    writable(address).putLong(offset(address) + R_PREV, prev);
+    writable(address).putLong(offset(address) + R_NEXT, next);
+  }
+
+  // Uncounts a record and returns its block to the free list
+  private void release(long address) {
+    size--;
+    if (isIssued(address))
+      issuedCount--;
+    free(address);
+  }
+
+  // Slab allocator
+
+  private long allocate(int length) {
+    int sizeClass = classOf(length);
+    int block = blockSize(sizeClass);
+    if (block > slabBytes)
+      throw new IllegalArgumentException("Book record of " + length + " bytes does not fit a catalog slab");
+    long address = freeLists[sizeClass];
+    if (address != NONE) {
+      freeLists[sizeClass] = slab(address).getLong(offset(address) + F_NEXT);
+    } else {
+      if (slabCount == 0 || slabTop + block > slabBytes) {
+        if (slabCount == slabs.length) {
+          slabs = Arrays.copyOf(slabs, slabCount * 2);
+          shared = Arrays.copyOf(shared, slabCount * 2);
+        }
+        slabs[slabCount++] = ByteBuffer.allocateDirect(slabBytes);
+        slabTop = 0;
+      }
+      address = (long) (slabCount - 1) << 32 | slabTop;
+      slabTop += block;
+    }
+    writable(address).putInt(offset(address) + R_CLASS, sizeClass);
+    return address;
+  }
+
+  private void free(long address) {
+    int sizeClass = slab(address).getInt(offset(address) + R_CLASS);
+    writable(address).putLong(offset(address) + F_NEXT, freeLists[sizeClass]);
+    freeLists[sizeClass] = address;
+  }
+
+  private static int classOf(int length) {
+    if (length <= SMALL_LIMIT)
+      return (length + SMALL_STEP - 1) / SMALL_STEP - 1;
+    return SMALL_CLASSES + (32 - Integer.numberOfLeadingZeros(length - 1)) - 13;
+  }
+
+  private static int blockSize(int sizeClass) {
+    return sizeClass < SMALL_CLASSES ? (sizeClass + 1) * SMALL_STEP : 1 << (sizeClass - SMALL_CLASSES + 13);
+  }
+
+  private ByteBuffer slab(long address) {
+    return slabs[(int) (address >>> 32)];
+  }
+
+  // The slab to change a record in, copied first if a snapshot still reads it
+  private ByteBuffer writable(long address) {
+    int index = (int) (address >>> 32);
+    if (shared[index]) {
+      shared[index] = false;
+      if (snapshotReading.get()) {
+        ByteBuffer source = slabs[index].duplicate();
+        source.clear().limit(index == slabCount - 1 ? slabTop : slabBytes);
+        slabs[index] = ByteBuffer.allocateDirect(slabBytes).put(source);
+      }
+    }
+    return slabs[index];
+  }
+
+  private static int offset(long address) {
+    return (int) address;
+  }
+
+  // ISBN directory
+
+  // The slot holding isbn, or the free slot where it would go
+  private int slotOf(byte[] isbn, int hash) {
+    int mask = tableSlots - 1;
+    int slot = mix(hash) & mask;
+    for (long value; (value = table.getLong(slot * 8)) != 0; slot = (slot + 1) & mask) {
+      long address = value - 1;
+      if (slab(address).getInt(offset(address) + R_HASH) == hash && isbnEquals(address, isbn))
+        return slot;
+    }
+    return slot;
+  }
+
+  // Grows at two-thirds full; the table is rebuilt into a fresh buffer,
+  // which a single ByteBuffer caps at 2^27 slots
+  private void insertSlot(long address, int hash) {
+    if ((size + 1) * 3L > tableSlots * 2L) {
+      if (tableSlots == MAX_TABLE_SLOTS)
+        throw new IllegalStateException("Off-heap catalog directory is full");
+      ByteBuffer old = table;
+      int oldSlots = tableSlots;
+      tableSlots *= 2;
+      table = ByteBuffer.allocateDirect(tableSlots * 8);
+      for (int i = 0; i < oldSlots; i++) {
+        long value = old.getLong(i * 8);
+        if (value != 0)
+          place(value, slab(value - 1).getInt(offset(value - 1) + R_HASH));
+      }
+    }
+    place(address + 1, hash);
+  }
+
+  private void place(long value, int hash) {
+    int mask = tableSlots - 1;
+    int slot = mix(hash) & mask;
+    while (table.getLong(slot * 8) != 0)
+      slot = (slot + 1) & mask;
+    table.putLong(slot * 8, value);
+  }
+
+  // Backward-shift deletion, so lookups never have to step over tombstones
+  private void deleteSlot(int slot) {
+    int mask = tableSlots - 1;
+    int hole = slot;
+    for (int next = (hole + 1) & mask;; next = (next + 1) & mask) {
+      long value = table.getLong(next * 8);
+      if (value == 0)
+        break;
+      int home = mix(slab(value - 1).getInt(offset(value - 1) + R_HASH)) & mask;
+      if (((next - home) & mask) >= ((next - hole) & mask)) {
+        table.putLong(hole * 8, value);
+        hole = next;
+      }
+    }
+    table.putLong(hole * 8, 0);
+  }
+
+  private static byte[] utf8(String value) {
+    if (value == null)
+      return null;
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    if (bytes.length >= NULL_LENGTH)
+      throw new IllegalArgumentException("Book field longer than " + (NULL_LENGTH - 1) + " bytes");
+    return bytes;
+  }
+
+  private static int hash(byte[] bytes) {
+    int hash = 0;
+    for (byte b : bytes)
+      hash = 31 * hash + b;
+    return hash;
+  }
+
+  private static int mix(int hash) {
+    int mixed = hash * 0x9E3779B9;
+    return mixed ^ (mixed >>> 16);
+  }
+}
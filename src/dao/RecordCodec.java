@@ -0,0 +1,172 @@
+package dao;
+
+import models.Book;
+import models.BookRequest;
+import models.RequestStatus;
+import models.User;
+import models.UserRole;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+// Versioned binary format for persisted records: varint lengths, UTF-8
+// strings, epoch-millis longs and a flag byte for optional Book fields.
+// Files start with "LMS" + version; Java serialization streams (0xACED)
+// are still recognised so existing data files can be migrated.
+public final class RecordCodec {
+  public static final int VERSION = 1;
+  private static final byte[] MAGIC = { 'L', 'M', 'S' };
+
+  private static final int FLAG_ISSUED = 1;
+  private static final int FLAG_ISSUED_TO = 2;
+  private static final int FLAG_ISSUE_DATE = 4;
+  private static final int FLAG_DUE_DATE = 8;
+
+  private RecordCodec() {
+  }
+
+  public static void writeHeader(DataOutput out) throws IOException {
+    out.write(MAGIC);
+    out.writeByte(VERSION);
+  }
+
+  public static int readHeader(DataInput in) throws IOException {
+    for (byte expected : MAGIC) {
+      if (in.readByte() != expected)
+        throw new IOException("Not a library data file");
+    }
+    int version = in.readUnsignedByte();
+    if (version > VERSION)
+      throw new IOException("Unsupported data file version " + version);
+    return version;
+  }
+
+  // Peeks at the stream, which must support mark/reset
+  public static boolean isJavaSerialized(InputStream in) throws IOException {
+    in.mark(2);
+    int first = in.read();
+    int second = in.read();
+    in.reset();
+    return first == 0xAC && second == 0xED;
+  }
+
+  public static void writeBook(DataOutput out, Book book) throws IOException {
+    int flags = 0;
+    if (book.isIssued())
+      flags |= FLAG_ISSUED;
+    if (book.getIssuedTo() != null)
+      flags |= FLAG_ISSUED_TO;
+    if (book.getIssueDate() != null)
+      flags |= FLAG_ISSUE_DATE;
+    if (book.getDueDate() != null)
+      flags |= FLAG_DUE_DATE;
+
+    writeString(out, book.getIsbn());
+    writeString(out, book.getTitle());
+    writeString(out, book.getAuthor());
+    writeString(out, book.getGenre());
+    out.writeByte(flags);
+    if ((flags & FLAG_ISSUED_TO) != 0)
+      writeString(out, book.getIssuedTo());
+    if ((flags & FLAG_ISSUE_DATE) != 0)
+      writeVarLong(out, book.getIssueDate().getTime());
+    if ((flags & FLAG_DUE_DATE) != 0)
+      writeVarLong(out, book.getDueDate().getTime());
+  }
+
+  public static Book readBook(DataInput in) throws IOException {
+    Book book = new Book(readString(in), readString(in), readString(in), readString(in));
+    int flags = in.readUnsignedByte();
+    book.setIssued((flags & FLAG_ISSUED) != 0);
+    if ((flags & FLAG_ISSUED_TO) != 0)
+      book.setIssuedTo(readString(in));
+    if ((flags & FLAG_ISSUE_DATE) != 0)
+      book.setIssueDate(new Date(readVarLong(in)));
+    if ((flags & FLAG_DUE_DATE) != 0)
+      book.setDueDate(new Date(readVarLong(in)));
+    return book;
+  }
+
+  public static void writeUser(DataOutput out, User user) throws IOException {
+    writeString(out, user.getUsername());
+    writeString(out, user.getPassword());
+    writeString(out, user.getEmail());
+    out.writeByte(user.getRole().ordinal());
+  }
+
+  public static User readUser(DataInput in) throws IOException {
+    return new User(readString(in), readString(in), readString(in),
+        UserRole.values()[in.readUnsignedByte()]);
+  }
+
+  public static void writeRequest(DataOutput out, BookRequest request) throws IOException {
+    writeString(out, request.getRequestId());
+    writeString(out, request.getIsbn());
+    writeString(out, request.getUsername());
+    writeVarLong(out, request.getRequestDate().getTime());
+    out.writeByte(request.getStatus().ordinal());
+  }
+
+  public static BookRequest readRequest(DataInput in) throws IOException {
+    return new BookRequest(readString(in), readString(in), readString(in),
+        new Date(readVarLong(in)), RequestStatus.values()[in.readUnsignedByte()]);
+  }
+
+  // Strings are length-prefixed with length + 1 so that 0 can mean null
+  public static void writeString(DataOutput out, String value) throws IOException {
+    if (value == null) {
+      writeVarInt(out, 0);
+      return;
+    }
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    writeVarInt(out, bytes.length + 1);
+    out.write(bytes);
+  }
+
+  public static String readString(DataInput in) throws IOException {
+    int length = readVarInt(in);
+    if (length == 0)
+      return null;
+    byte[] bytes = new byte[length - 1];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  public static void writeVarInt(DataOutput out, int value) throws IOException {
+    while ((value & ~0x7F) != 0) {
+      out.writeByte((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.writeByte(value);
+  }
+
+  public static int readVarInt(DataInput in) throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      int b = in.readUnsignedByte();
+      value |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0)
+        return value;
+    }
+    throw new IOException("Malformed varint");
+  }
+
+  public static void writeVarLong(DataOutput out, long value) throws IOException {
+    while ((value & ~0x7FL) != 0) {
+      out.writeByte((int) (value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.writeByte((int) value);
+  }
+
+  public static long readVarLong(DataInput in) throws IOException {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      int b = in.readUnsignedByte();
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0)
+        return value;
+    }
+    throw new IOException("Malformed varint");
+  }
+}
@@ -0,0 +1,96 @@
+package dao;
+
+import models.Book;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+// Writes and reads a generated catalog through RecordCodec and through Java
+// serialization, and prints the size and best-of-three time of each.
+// Usage: java -cp bin dao.RecordCodecBenchmark [books]
+public class RecordCodecBenchmark {
+  private static final int ROUNDS = 3;
+
+  public static void main(String[] args) throws Exception {
+    int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+    List<Book> books = generate(count);
+
+    byte[] encoded = null;
+    byte[] serialized = null;
+    long[] best = { Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE };
+    for (int round = 0; round < ROUNDS; round++) {
+      long start = System.nanoTime();
+      encoded = encode(books);
+      best[0] = Math.min(best[0], System.nanoTime() - start);
+      start = System.nanoTime();
+      if (decode(encoded).size() != count)
+        throw new IOException("Decoded the wrong number of books");
+      best[1] = Math.min(best[1], System.nanoTime() - start);
+      start = System.nanoTime();
+      serialized = serialize(books);
+      best[2] = Math.min(best[2], System.nanoTime() - start);
+      start = System.nanoTime();
+      if (deserialize(serialized).size() != count)
+        throw new IOException("Deserialized the wrong number of books");
+      best[3] = Math.min(best[3], System.nanoTime() - start);
+    }
+    System.out.printf("%,d books, a quarter of them issued%n", count);
+    System.out.printf("%-18s %,12d bytes  write %8.1f ms  read %8.1f ms%n", "RecordCodec",
+        encoded.length, best[0] / 1e6, best[1] / 1e6);
+    System.out.printf("%-18s %,12d bytes  write %8.1f ms  read %8.1f ms%n", "ObjectOutputStream",
+        serialized.length, best[2] / 1e6, best[3] / 1e6);
+  }
+
+  private static List<Book> generate(int count) {
+    long now = System.currentTimeMillis();
+    List<Book> books = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      Book book = new Book(String.format("978%010d", i), "Title " + i, "Author " + i % 5000, "Genre " + i % 40);
+      if (i % 4 == 0) {
+        book.setIssued(true);
+        book.setIssuedTo("member" + i % 1000);
+        book.setIssueDate(new Date(now));
+        book.setDueDate(new Date(now + 14L * 24 * 60 * 60 * 1000));
+      }
+      books.add(book);
+    }
+    return books;
+  }
+
+  private static byte[] encode(List<Book> books) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    RecordCodec.writeHeader(out);
+    RecordCodec.writeVarInt(out, books.size());
+    for (Book book : books)
+      RecordCodec.writeBook(out, book);
+    out.flush();
+    return bytes.toByteArray();
+  }
+
+  private static List<Book> decode(byte[] encoded) throws IOException {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(encoded));
+    RecordCodec.readHeader(in);
+    int count = RecordCodec.readVarInt(in);
+    List<Book> books = new ArrayList<>(count);
+    for (int i = 0; i < count; i++)
+      books.add(RecordCodec.readBook(in));
+    return books;
+  }
+
+  private static byte[] serialize(List<Book> books) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(books);
+    }
+    return bytes.toByteArray();
+  }
+
+  @SuppressWarnings("unchecked")
+  private static List<Book> deserialize(byte[] serialized) throws IOException, ClassNotFoundException {
+    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialized))) {
+      return (List<Book>) in.readObject();
+    }
+  }
+}
@@ -0,0 +1,134 @@
+package dao;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+// Append-only file of [length][crc][payload] records. Appends are buffered
+// and reach the disk on commit; replay stops at the first torn or corrupt
+// record, which can only be the tail of an interrupted write, and cuts it
+// off so later appends are not written behind it.
+public class RecordLog implements WriteBehindFlusher.Sink {
+  public interface RecordHandler {
+    void apply(DataInputStream record) throws IOException;
+  }
+
+  private final File file;
+  private FileOutputStream fileOut;
+  private DataOutputStream out;
+  private int recordCount;
+  private long size;
+
+  public RecordLog(File file) {
+    this.file = file;
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  public int getRecordCount() {
+    return recordCount;
+  }
+
+  public long getSize() {
+    return size;
+  }
+
+  public synchronized void append(byte[] payload) throws IOException {
+    if (out == null) {
+      if (file.getParentFile() != null)
+        file.getParentFile().mkdirs();
+      fileOut = new FileOutputStream(file, true);
+      out = new DataOutputStream(new BufferedOutputStream(fileOut));
+    }
+    out.writeInt(payload.length);
+    out.writeLong(checksum(payload));
+    out.write(payload);
+    recordCount++;
+    size += 12 + payload.length;
+  }
+
+  @Override
+  public synchronized void commit() throws IOException {
+    if (out == null)
+      return;
+    out.flush();
+    fileOut.getFD().sync();
+  }
+
+  // Closes the file so it can be moved or deleted; counters start over
+  public synchronized void close() {
+    if (out != null) {
+      try {
+        out.close();
+      } catch (IOException e) {
+        System.err.println("Error closing " + file + ": " + e.getMessage());
+      }
+    }
+    out = null;
+    fileOut = null;
+    recordCount = 0;
+    size = 0;
+  }
+
+  // Replays this log's own file and picks up its counters
+  public synchronized int replay(RecordHandler handler) {
+    long[] end = new long[1];
+    recordCount = replay(file, handler, end);
+    if (end[0] >= 0 && file.length() > end[0])
+      truncate(end[0]);
+    size = file.length();
+    return recordCount;
+  }
+
+  public static int replay(File file, RecordHandler handler) {
+    return replay(file, handler, new long[1]);
+  }
+
+  // end[0] is left just past the last good record, or at -1 if reading
+  // failed for some other reason than a torn tail
+  private static int replay(File file, RecordHandler handler, long[] end) {
+    if (!file.exists())
+      return 0;
+
+    int applied = 0;
+    long remaining = file.length();
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      while (remaining >= 12) {
+        int length = in.readInt();
+        long crc = in.readLong();
+        if (length < 0 || length > remaining - 12)
+          break;
+        byte[] payload = new byte[length];
+        in.readFully(payload);
+        if (checksum(payload) != crc)
+          break;
+        handler.apply(new DataInputStream(new ByteArrayInputStream(payload)));
+        applied++;
+        remaining -= 12 + length;
+        end[0] += 12 + length;
+      }
+    } catch (IOException e) {
+      System.err.println("Error replaying " + file + ": " + e.getMessage());
+      end[0] = -1;
+    }
+    return applied;
+  }
+
+  private void truncate(long length) {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+      channel.truncate(length);
+      System.err.println("Dropped a torn record at the end of " + file);
+    } catch (IOException e) {
+      System.err.println("Error truncating " + file + ": " + e.getMessage());
+    }
+  }
+
+  private static long checksum(byte[] payload) {
+    CRC32 crc = new CRC32();
+    crc.update(payload, 0, payload.length);
+    return crc.getValue();
+  }
+}
@@ -0,0 +1,92 @@
+package dao;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+// Writes a log, damages its tail the ways an interrupted write or a bad
+// disk can, and checks that replay keeps every whole record, that the
+// read-only replay leaves the file alone, and that the next replay cuts
+// the tail off so records appended afterwards are read back too.
+// Usage: java -cp bin dao.RecordLogCheck
+public class RecordLogCheck {
+  private static final int RECORDS = 1_000;
+  private static final int APPENDED = 10;
+
+  private interface Tail {
+    void write(DataOutputStream out) throws IOException;
+  }
+
+  public static void main(String[] args) throws Exception {
+    check("torn header", out -> out.writeInt(40));
+    check("torn payload", out -> {
+      out.writeInt(40);
+      out.writeLong(0);
+      out.write(new byte[15]);
+    });
+    check("oversized length", out -> {
+      out.writeInt(Integer.MAX_VALUE);
+      out.writeLong(0);
+      out.write(new byte[64]);
+    });
+    check("negative length", out -> {
+      out.writeInt(-12);
+      out.writeLong(0);
+      out.write(new byte[64]);
+    });
+    check("bad checksum", out -> {
+      out.writeInt(8);
+      out.writeLong(12345);
+      out.writeLong(RECORDS);
+    });
+  }
+
+  private static void check(String name, Tail tail) throws IOException {
+    File file = File.createTempFile("record-log-check", ".log");
+    file.deleteOnExit();
+    RecordLog log = new RecordLog(file);
+    for (int i = 0; i < RECORDS; i++)
+      log.append(payload(i));
+    log.commit();
+    log.close();
+    long good = file.length();
+    try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file, true))) {
+      tail.write(out);
+    }
+    long damaged = file.length();
+
+    List<Integer> read = new ArrayList<>();
+    if (RecordLog.replay(file, record -> read.add(record.readInt())) != RECORDS || file.length() != damaged)
+      throw new IllegalStateException(name + ": read-only replay changed the file or lost records");
+    read.clear();
+    log = new RecordLog(file);
+    if (log.replay(record -> read.add(record.readInt())) != RECORDS || file.length() != good)
+      throw new IllegalStateException(name + ": tail was not cut off at " + good + " bytes");
+    for (int i = 0; i < APPENDED; i++)
+      log.append(payload(RECORDS + i));
+    log.commit();
+    log.close();
+
+    read.clear();
+    int replayed = new RecordLog(file).replay(record -> read.add(record.readInt()));
+    if (replayed != RECORDS + APPENDED)
+      throw new IllegalStateException(name + ": records appended after the cut were not read back");
+    for (int i = 0; i < replayed; i++) {
+      if (read.get(i) != i)
+        throw new IllegalStateException(name + ": record " + i + " read back as " + read.get(i));
+    }
+    System.out.printf("%-16s %d bytes of tail dropped, %d records replayed after appending%n",
+        name, damaged - good, replayed);
+    file.delete();
+  }
+
+  private static byte[] payload(int value) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    new DataOutputStream(bytes).writeInt(value);
+    return bytes.toByteArray();
+  }
+}
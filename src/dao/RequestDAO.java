@@ -0,0 +1,67 @@
+package dao;
+
+import models.BookRequest;
+import utils.Constants;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.function.Consumer;
+
+public class RequestDAO {
+  private RequestStore store;
+  private boolean readOnly;
+
+  public RequestDAO() {
+    this(false);
+  }
+
+  public RequestDAO(boolean readOnly) {
+    this.readOnly = readOnly;
+    this.store = openStore(readOnly);
+  }
+
+  private static RequestStore openStore(boolean readOnly) {
+    if (Constants.STORAGE_JDBC.equals(Constants.STORAGE_MODE)) {
+      try {
+        return new JdbcRequestStore();
+      } catch (SQLException e) {
+        System.err.println("Error opening request database, falling back to files: " + e.getMessage());
+      }
+    }
+    return new FileRequestStore(readOnly);
+  }
+
+  public void addRequest(BookRequest request) {
+    checkWritable();
+    store.addRequest(request);
+  }
+
+  public void updateRequest(BookRequest request) {
+    checkWritable();
+    store.updateRequest(request);
+  }
+
+  public BookRequest findRequestById(String requestId) {
+    return store.findRequestById(requestId);
+  }
+
+  public boolean hasPendingRequest(String isbn, String username) {
+    return store.hasPendingRequest(isbn, username);
+  }
+
+  public List<BookRequest> getPendingRequests() {
+    return store.getPendingRequests();
+  }
+
+  public List<BookRequest> getUserRequests(String username) {
+    return store.getUserRequests(username);
+  }
+
+  public void forEachRequest(Consumer<BookRequest> action) {
+    store.forEachRequest(action);
+  }
+
+  private void checkWritable() {
+    if (readOnly)
+      throw new IllegalStateException("Error saving request: the requests are open read-only");
+  }
+}
\ No newline at end of file
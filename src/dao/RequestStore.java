@@ -0,0 +1,23 @@
+package dao;
+
+import models.BookRequest;
+import java.util.List;
+import java.util.function.Consumer;
+
+public interface RequestStore {
+  void addRequest(BookRequest request);
+
+  // Persists a status change on a stored request
+  void updateRequest(BookRequest request);
+
+  BookRequest findRequestById(String requestId);
+
+  boolean hasPendingRequest(String isbn, String username);
+
+  List<BookRequest> getPendingRequests();
+
+  List<BookRequest> getUserRequests(String username);
+
+  // Streams every request in creation order
+  void forEachRequest(Consumer<BookRequest> action);
+}
@@ -2,65 +2,51 @@ package dao;
 
 import models.User;
 import models.UserRole;
-import java.io.*;
-import java.util.ArrayList;
-import java.util.List;
+import utils.Constants;
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
 
 public class UserDAO {
-  private static final String USER_FILE = "data/users.dat";
-  private List<User> users;
+  private UserStore store;
 
   public UserDAO() {
-    this.users = loadUsers();
+    this.store = openStore();
     initializeDefaultUsers();
   }
 
-  @SuppressWarnings("unchecked")
-  private List<User> loadUsers() {
-    File file = new File(USER_FILE);
-    if (!file.exists())
-      return new ArrayList<>();
-
-    try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(file))) {
-      return (List<User>) in.readObject();
-    } catch (IOException | ClassNotFoundException e) {
-      System.err.println("Error loading users: " + e.getMessage());
-      return new ArrayList<>();
+  private static UserStore openStore() {
+    if (Constants.STORAGE_JDBC.equals(Constants.STORAGE_MODE)) {
+      try {
+        return new JdbcUserStore();
+      } catch (SQLException e) {
+        System.err.println("Error opening user database, falling back to files: " + e.getMessage());
+      }
     }
+    return new FileUserStore();
   }
 
-  private void saveUsers() {
-    try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(USER_FILE))) {
-      new File(USER_FILE).getParentFile().mkdirs();
-      out.writeObject(users);
-    } catch (IOException e) {
-      System.err.println("Error saving users: " + e.getMessage());
-    }
+  public CompletableFuture<Void> flush() {
+    return store.flush();
   }
 
   private void initializeDefaultUsers() {
-    if (users.isEmpty()) {
-      users.add(new User("admin", "admin123", "admin@library.com", UserRole.ADMIN));
-      users.add(new User("librarian", "lib123", "librarian@library.com", UserRole.LIBRARIAN));
-      users.add(new User("member", "member123", "member@library.com", UserRole.MEMBER));
-      saveUsers();
+    if (store.isEmpty()) {
+      store.addUser(new User("admin", "admin123", "admin@library.com", UserRole.ADMIN));
+      store.addUser(new User("librarian", "lib123", "librarian@library.com", UserRole.LIBRARIAN));
+      store.addUser(new User("member", "member123", "member@library.com", UserRole.MEMBER));
     }
   }
 
   public boolean registerUser(String username, String password, String email, UserRole role) {
-    if (findUserByUsername(username) != null)
-      return false;
-
-    users.add(new User(username, password, email, role));
-    saveUsers();
-    return true;
+    return store.addUser(new User(username, password, email, role));
   }
 
   public User findUserByUsername(String username) {
-    return users.stream()
-        .filter(user -> user.getUsername().equals(username))
-        .findFirst()
-        .orElse(null);
+    return store.findUserByUsername(username);
+  }
+
+  public User findUserByEmail(String email) {
+    return store.findUserByEmail(email);
   }
 
   public User authenticate(String username, String password) {
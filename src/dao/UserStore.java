@@ -0,0 +1,18 @@
+package dao;
+
+import models.User;
+import java.util.concurrent.CompletableFuture;
+
+public interface UserStore {
+  boolean isEmpty();
+
+  // Returns false if the username is already taken
+  boolean addUser(User user);
+
+  User findUserByUsername(String username);
+
+  // Emails are matched case-insensitively
+  User findUserByEmail(String email);
+
+  CompletableFuture<Void> flush();
+}
@@ -0,0 +1,121 @@
+package dao;
+
+import utils.Constants;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+// Commits dirty DAO state on a dedicated thread so mutations return without
+// touching the disk. A mutation marks its sink dirty; repeated marks coalesce
+// and every dirty sink is committed (and fsynced) in one batch. When a batch
+// runs is decided by the policy:
+//   interval - FLUSH_INTERVAL_MS after the first pending mutation
+//   batch    - once FLUSH_BATCH_OPS mutations are pending, or the interval elapses
+//   sync     - after every mutation
+public class WriteBehindFlusher {
+  public enum Policy {
+    INTERVAL, BATCH, SYNC
+  }
+
+  public interface Sink {
+    void commit() throws IOException;
+  }
+
+  private static WriteBehindFlusher instance;
+
+  private final Policy policy;
+  private final Object commitLock = new Object();
+  private Set<Sink> dirty = new LinkedHashSet<>();
+  private List<CompletableFuture<Void>> waiters = new ArrayList<>();
+  private int pendingOps;
+  private long firstPendingAt;
+
+  public static synchronized WriteBehindFlusher getInstance() {
+    if (instance == null)
+      instance = new WriteBehindFlusher(Policy.valueOf(Constants.FLUSH_POLICY.toUpperCase()));
+    return instance;
+  }
+
+  private WriteBehindFlusher(Policy policy) {
+    this.policy = policy;
+    Thread thread = new Thread(this::run, "dao-flusher");
+    thread.setDaemon(true);
+    thread.start();
+    Runtime.getRuntime().addShutdownHook(new Thread(this::commitPending, "dao-flusher-shutdown"));
+  }
+
+  // The returned future completes once this mutation is durable on disk
+  public synchronized CompletableFuture<Void> markDirty(Sink sink) {
+    if (pendingOps == 0)
+      firstPendingAt = System.currentTimeMillis();
+    dirty.add(sink);
+    pendingOps++;
+    CompletableFuture<Void> committed = new CompletableFuture<>();
+    waiters.add(committed);
+    // Wake the flusher to start the interval clock, or to commit right away
+    if (pendingOps == 1 || commitDue())
+      notifyAll();
+    return committed;
+  }
+
+  private boolean commitDue() {
+    if (pendingOps == 0)
+      return false;
+    if (policy == Policy.SYNC)
+      return true;
+    if (policy == Policy.BATCH && pendingOps >= Constants.FLUSH_BATCH_OPS)
+      return true;
+    return System.currentTimeMillis() - firstPendingAt >= Constants.FLUSH_INTERVAL_MS;
+  }
+
+  private void run() {
+    while (true) {
+      synchronized (this) {
+        try {
+          while (!commitDue()) {
+            if (pendingOps == 0)
+              wait();
+            else
+              wait(Math.max(1, Constants.FLUSH_INTERVAL_MS - (System.currentTimeMillis() - firstPendingAt)));
+          }
+        } catch (InterruptedException e) {
+          return;
+        }
+      }
+      commitPending();
+    }
+  }
+
+  private void commitPending() {
+    synchronized (commitLock) {
+      Set<Sink> sinks;
+      List<CompletableFuture<Void>> committed;
+      synchronized (this) {
+        sinks = dirty;
+        committed = waiters;
+        dirty = new LinkedHashSet<>();
+        waiters = new ArrayList<>();
+        pendingOps = 0;
+      }
+
+      IOException failure = null;
+      for (Sink sink : sinks) {
+        try {
+          sink.commit();
+        } catch (IOException e) {
+          System.err.println("Error flushing data: " + e.getMessage());
+          failure = e;
+        }
+      }
+      for (CompletableFuture<Void> future : committed) {
+        if (failure == null)
+          future.complete(null);
+        else
+          future.completeExceptionally(failure);
+      }
+    }
+  }
+}
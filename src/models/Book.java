@@ -5,6 +5,8 @@ import java.util.Date;
 import java.util.concurrent.TimeUnit;
 
 public class Book implements Serializable {
+  private static final long serialVersionUID = -1899666690039469231L;
+
   private String isbn;
   private String title;
   private String author;
@@ -13,6 +15,8 @@ public class Book implements Serializable {
   private Date issueDate;
   private Date dueDate;
   private String issuedTo;
+  // Position in catalog order, assigned by Library and kept in the shard files
+  private transient long sequence;
 
   public Book(String isbn, String title, String author, String genre) {
     this.isbn = isbn;
@@ -72,6 +76,14 @@ public class Book implements Serializable {
     this.issuedTo = issuedTo;
   }
 
+  public long getSequence() {
+    return sequence;
+  }
+
+  public void setSequence(long sequence) {
+    this.sequence = sequence;
+  }
+
   public long getDaysUntilDue() {
     if (dueDate == null)
       return -1;
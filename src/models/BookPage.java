@@ -0,0 +1,97 @@
+package models;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+
+// One page of a sorted listing. The cursor carries the sort keys of the
+// page's last book, so the next page starts right after it even if books
+// were added or removed in between, without counting past an offset. It is
+// opaque to callers and null on the last page.
+public class BookPage {
+  private static final int CURSOR_VERSION = 1;
+
+  private final List<Book> books;
+  private final String nextCursor;
+
+  public BookPage(List<Book> books, String nextCursor) {
+    this.books = books;
+    this.nextCursor = nextCursor;
+  }
+
+  // fetched holds up to limit + 1 books in order; the extra one only shows
+  // that there is a next page
+  public static BookPage of(BookSort sort, List<Book> fetched, int limit) {
+    if (limit < 1)
+      throw new IllegalArgumentException("Page size must be positive: " + limit);
+    if (fetched.size() <= limit)
+      return new BookPage(fetched, null);
+    fetched.subList(limit, fetched.size()).clear();
+    return new BookPage(fetched, cursorAfter(sort, fetched.get(limit - 1)));
+  }
+
+  public List<Book> getBooks() {
+    return books;
+  }
+
+  public String getNextCursor() {
+    return nextCursor;
+  }
+
+  public boolean hasNext() {
+    return nextCursor != null;
+  }
+
+  public static String cursorAfter(BookSort sort, Book last) {
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeByte(CURSOR_VERSION);
+      out.writeByte(sort.ordinal());
+      out.writeUTF(last.getIsbn());
+      writeNullable(out, last.getTitle());
+      writeNullable(out, last.getAuthor());
+      out.writeLong(last.getDueDate() == null ? Long.MIN_VALUE : last.getDueDate().getTime());
+      out.close();
+      return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+    } catch (IOException e) {
+      throw new IllegalStateException("Error encoding page cursor", e);
+    }
+  }
+
+  // A stand-in book with the sort keys from cursor, for comparing against
+  // sort's comparator; null for a null cursor (the first page)
+  public static Book probe(BookSort sort, String cursor) {
+    if (cursor == null)
+      return null;
+    try {
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(Base64.getUrlDecoder().decode(cursor)));
+      if (in.readByte() != CURSOR_VERSION || in.readByte() != sort.ordinal())
+        throw new IllegalArgumentException("Page cursor is for another listing");
+      Book probe = new Book(in.readUTF(), readNullable(in), readNullable(in), null);
+      long due = in.readLong();
+      if (due != Long.MIN_VALUE) {
+        probe.setIssued(true);
+        probe.setDueDate(new Date(due));
+      }
+      return probe;
+    } catch (IOException | IllegalArgumentException e) {
+      throw new IllegalArgumentException("Invalid page cursor: " + cursor, e);
+    }
+  }
+
+  private static void writeNullable(DataOutputStream out, String value) throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null)
+      out.writeUTF(value);
+  }
+
+  private static String readNullable(DataInputStream in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+}
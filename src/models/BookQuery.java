@@ -0,0 +1,207 @@
+package models;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+// A filter over the catalog built from field predicates combined with
+// and/or/not, e.g. and(genre("Fantasy"), available(), titleContains("ring")).
+// matches() is the reference meaning; stores answer query() from their
+// indexes where they can but must return exactly the books it accepts.
+public final class BookQuery {
+  public enum Kind {
+    ISBN, TITLE, AUTHOR, GENRE, ISSUED, AVAILABLE, ISSUED_TO, DUE_BETWEEN, KEYWORD, AND, OR, NOT
+  }
+
+  private final Kind kind;
+  private final String value;
+  private final String lowerValue;
+  private final long from;
+  private final long to;
+  private final List<BookQuery> operands;
+
+  private BookQuery(Kind kind, String value, long from, long to, List<BookQuery> operands) {
+    this.kind = kind;
+    this.value = value;
+    this.lowerValue = value == null ? null : value.toLowerCase();
+    this.from = from;
+    this.to = to;
+    this.operands = operands;
+  }
+
+  private static BookQuery leaf(Kind kind, String value) {
+    return new BookQuery(kind, value, 0, 0, Collections.emptyList());
+  }
+
+  // A valid ISBN is matched in its canonical form, like the stored keys
+  public static BookQuery isbn(String isbn) {
+    return leaf(Kind.ISBN, Isbn.normalize(isbn));
+  }
+
+  // Case-insensitive substring of the title
+  public static BookQuery titleContains(String text) {
+    return leaf(Kind.TITLE, text);
+  }
+
+  public static BookQuery author(String author) {
+    return leaf(Kind.AUTHOR, author);
+  }
+
+  public static BookQuery genre(String genre) {
+    return leaf(Kind.GENRE, genre);
+  }
+
+  public static BookQuery issued() {
+    return leaf(Kind.ISSUED, null);
+  }
+
+  public static BookQuery available() {
+    return leaf(Kind.AVAILABLE, null);
+  }
+
+  public static BookQuery issuedTo(String username) {
+    return leaf(Kind.ISSUED_TO, username);
+  }
+
+  // Issued books due in [from, to)
+  public static BookQuery dueBetween(long from, long to) {
+    return new BookQuery(Kind.DUE_BETWEEN, null, from, to, Collections.emptyList());
+  }
+
+  // What searchBooks matches: title or author ignoring case, or ISBN
+  public static BookQuery keyword(String keyword) {
+    return leaf(Kind.KEYWORD, keyword);
+  }
+
+  public static BookQuery and(BookQuery... operands) {
+    return combine(Kind.AND, operands);
+  }
+
+  public static BookQuery or(BookQuery... operands) {
+    return combine(Kind.OR, operands);
+  }
+
+  public static BookQuery not(BookQuery operand) {
+    switch (operand.kind) {
+      case ISSUED:
+        return available();
+      case AVAILABLE:
+        return issued();
+      case NOT:
+        return operand.operands.get(0);
+      default:
+        return new BookQuery(Kind.NOT, null, 0, 0, Collections.singletonList(operand));
+    }
+  }
+
+  // Nested operands of the same kind are flattened so the planner sees
+  // every operand of an AND at once
+  private static BookQuery combine(Kind kind, BookQuery[] operands) {
+    if (operands.length == 0)
+      throw new IllegalArgumentException(kind + " needs at least one operand");
+    if (operands.length == 1)
+      return operands[0];
+    List<BookQuery> flat = new ArrayList<>();
+    for (BookQuery operand : operands) {
+      if (operand.kind == kind)
+        flat.addAll(operand.operands);
+      else
+        flat.add(operand);
+    }
+    return new BookQuery(kind, null, 0, 0, Collections.unmodifiableList(flat));
+  }
+
+  public Kind getKind() {
+    return kind;
+  }
+
+  public String getValue() {
+    return value;
+  }
+
+  public String getLowerValue() {
+    return lowerValue;
+  }
+
+  public long getFrom() {
+    return from;
+  }
+
+  public long getTo() {
+    return to;
+  }
+
+  public List<BookQuery> getOperands() {
+    return operands;
+  }
+
+  public boolean matches(Book book) {
+    switch (kind) {
+      case ISBN:
+        return value.equals(book.getIsbn());
+      case TITLE:
+        return book.getTitle() != null && book.getTitle().toLowerCase().contains(lowerValue);
+      case AUTHOR:
+        return Objects.equals(value, book.getAuthor());
+      case GENRE:
+        return Objects.equals(value, book.getGenre());
+      case ISSUED:
+        return book.isIssued();
+      case AVAILABLE:
+        return !book.isIssued();
+      case ISSUED_TO:
+        return book.isIssued() && value.equals(book.getIssuedTo());
+      case DUE_BETWEEN:
+        return book.isIssued() && book.getDueDate() != null
+            && book.getDueDate().getTime() >= from && book.getDueDate().getTime() < to;
+      case KEYWORD:
+        return Library.matches(book, value, lowerValue);
+      case AND:
+        for (BookQuery operand : operands) {
+          if (!operand.matches(book))
+            return false;
+        }
+        return true;
+      case OR:
+        for (BookQuery operand : operands) {
+          if (operand.matches(book))
+            return true;
+        }
+        return false;
+      default:
+        return !operands.get(0).matches(book);
+    }
+  }
+
+  @Override
+  public String toString() {
+    switch (kind) {
+      case ISBN:
+        return "isbn=" + value;
+      case TITLE:
+        return "title contains '" + value + "'";
+      case AUTHOR:
+        return "author=" + value;
+      case GENRE:
+        return "genre=" + value;
+      case ISSUED:
+        return "issued";
+      case AVAILABLE:
+        return "available";
+      case ISSUED_TO:
+        return "issuedTo=" + value;
+      case DUE_BETWEEN:
+        return "due in [" + from + ", " + to + ")";
+      case KEYWORD:
+        return "keyword '" + value + "'";
+      case NOT:
+        return "NOT (" + operands.get(0) + ")";
+      default:
+        List<String> parts = new ArrayList<>();
+        for (BookQuery operand : operands)
+          parts.add(operand.kind == Kind.AND || operand.kind == Kind.OR ? "(" + operand + ")" : operand.toString());
+        return String.join(" " + kind + " ", parts);
+    }
+  }
+}
@@ -2,8 +2,11 @@ package models;
 
 import java.io.Serializable;
 import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class BookRequest implements Serializable {
+  private static final AtomicLong lastIdMillis = new AtomicLong();
+
   private String requestId;
   private String isbn;
   private String username;
@@ -11,13 +14,41 @@ public class BookRequest implements Serializable {
   private RequestStatus status;
 
   public BookRequest(String isbn, String username) {
-    this.requestId = "REQ_" + System.currentTimeMillis();
+    this.requestId = nextRequestId();
     this.isbn = isbn;
     this.username = username;
     this.requestDate = new Date();
     this.status = RequestStatus.PENDING;
   }
 
+  // Restores a previously persisted request
+  public BookRequest(String requestId, String isbn, String username, Date requestDate, RequestStatus status) {
+    this.requestId = requestId;
+    this.isbn = isbn;
+    this.username = username;
+    this.requestDate = requestDate;
+    this.status = status;
+  }
+
+  // Request ids are keys in the request store, so two requests created in the
+  // same millisecond must not share one
+  private static String nextRequestId() {
+    long now = System.currentTimeMillis();
+    return "REQ_" + lastIdMillis.accumulateAndGet(now, (last, current) -> Math.max(last + 1, current));
+  }
+
+  // Called by the request stores for the ids they load, so a restart whose
+  // clock is behind the last id handed out still never repeats one
+  public static void seedRequestId(String requestId) {
+    if (requestId == null || !requestId.startsWith("REQ_"))
+      return;
+    try {
+      lastIdMillis.accumulateAndGet(Long.parseLong(requestId.substring(4)), Math::max);
+    } catch (NumberFormatException e) {
+      // Not an id this class made, so it cannot collide with one
+    }
+  }
+
   // Getters and Setters
   public String getRequestId() {
     return requestId;
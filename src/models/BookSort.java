@@ -0,0 +1,62 @@
+package models;
+
+import java.util.Comparator;
+
+// Orders a paged listing can be sorted in. Titles and authors ignore case
+// first; every order ends with the ISBN so no two books compare equal and a
+// page can resume exactly after the last book of the one before.
+public enum BookSort {
+  TITLE((a, b) -> {
+    int order = compareText(a.getTitle(), b.getTitle());
+    return order != 0 ? order : a.getIsbn().compareTo(b.getIsbn());
+  }),
+  AUTHOR((a, b) -> {
+    int order = compareText(a.getAuthor(), b.getAuthor());
+    if (order == 0)
+      order = compareText(a.getTitle(), b.getTitle());
+    return order != 0 ? order : a.getIsbn().compareTo(b.getIsbn());
+  }),
+  ISBN(Comparator.comparing(Book::getIsbn)),
+  // Only issued books with a due date are listed
+  DUE_DATE((a, b) -> {
+    int order = Long.compare(a.getDueDate().getTime(), b.getDueDate().getTime());
+    return order != 0 ? order : a.getIsbn().compareTo(b.getIsbn());
+  });
+
+  private final Comparator<Book> order;
+
+  BookSort(Comparator<Book> order) {
+    this.order = order;
+  }
+
+  public Comparator<Book> comparator() {
+    return order;
+  }
+
+  public boolean includes(Book book) {
+    return this != DUE_DATE || book.isIssued() && book.getDueDate() != null;
+  }
+
+  // String.CASE_INSENSITIVE_ORDER with ties broken by the case-sensitive
+  // order, nulls first, in one pass; the trees compare on every insert and
+  // most characters compared are equal, so those skip the case folding
+  static int compareText(String a, String b) {
+    if (a == null || b == null)
+      return a == b ? 0 : a == null ? -1 : 1;
+    int length = Math.min(a.length(), b.length());
+    int tie = 0;
+    for (int i = 0; i < length; i++) {
+      char x = a.charAt(i);
+      char y = b.charAt(i);
+      if (x == y)
+        continue;
+      char foldedX = Character.toLowerCase(Character.toUpperCase(x));
+      char foldedY = Character.toLowerCase(Character.toUpperCase(y));
+      if (foldedX != foldedY)
+        return foldedX - foldedY;
+      if (tie == 0)
+        tie = x - y;
+    }
+    return a.length() != b.length() ? a.length() - b.length() : tie;
+  }
+}
@@ -0,0 +1,99 @@
+package models;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+// The catalog's ISBN -> Book map, in catalog order. Slots come from an
+// IsbnIndex, so a canonical ISBN-13 is found by its long code without
+// hashing the String. Books sit in an array whose freed slots are reused,
+// and prev/next slot links keep the order a LinkedHashMap would.
+class BookTable {
+  private static final int NONE = -1;
+
+  private final IsbnIndex slots = new IsbnIndex();
+  private Book[] books = new Book[16];
+  private int[] prev = new int[16];
+  // Also chains the free slots
+  private int[] next = new int[16];
+  private int head = NONE;
+  private int tail = NONE;
+  private int firstFree = NONE;
+  private int used;
+  private int size;
+
+  Book get(String isbn) {
+    int slot = slots.get(isbn);
+    return slot < 0 ? null : books[slot];
+  }
+
+  // A new ISBN goes to the end; a book with an ISBN already present
+  // replaces it in place and the old one is returned
+  Book put(Book book) {
+    int slot = slots.get(book.getIsbn());
+    if (slot >= 0) {
+      Book previous = books[slot];
+      books[slot] = book;
+      return previous;
+    }
+    if (firstFree != NONE) {
+      slot = firstFree;
+      firstFree = next[slot];
+    } else {
+      if (used == books.length) {
+        books = Arrays.copyOf(books, used * 2);
+        prev = Arrays.copyOf(prev, used * 2);
+        next = Arrays.copyOf(next, used * 2);
+      }
+      slot = used++;
+    }
+    books[slot] = book;
+    prev[slot] = tail;
+    next[slot] = NONE;
+    if (tail == NONE)
+      head = slot;
+    else
+      next[tail] = slot;
+    tail = slot;
+    slots.put(book.getIsbn(), slot);
+    size++;
+    return null;
+  }
+
+  Book remove(String isbn) {
+    int slot = slots.remove(isbn);
+    if (slot < 0)
+      return null;
+    Book book = books[slot];
+    if (prev[slot] == NONE)
+      head = next[slot];
+    else
+      next[prev[slot]] = next[slot];
+    if (next[slot] == NONE)
+      tail = prev[slot];
+    else
+      prev[next[slot]] = prev[slot];
+    books[slot] = null;
+    next[slot] = firstFree;
+    firstFree = slot;
+    size--;
+    return book;
+  }
+
+  int size() {
+    return size;
+  }
+
+  void forEach(Consumer<Book> action) {
+    for (int slot = head; slot != NONE; slot = next[slot])
+      action.accept(books[slot]);
+  }
+
+  // A new list of the books in catalog order
+  List<Book> values() {
+    List<Book> values = new ArrayList<>(size);
+    forEach(values::add);
+    return values;
+  }
+}
@@ -0,0 +1,162 @@
+package models;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Predicate;
+
+// The catalog order as a flat array that a scan can split into chunks, which
+// the linked entries of Library's map cannot. Books are appended in sequence
+// order; a moved or removed book leaves a null behind, found again by binary
+// search on the sequence numbers kept alongside, and the array is compacted
+// once half of it is gaps.
+//
+// A scan checks a first stretch of books on the calling thread and times it.
+// When the rest would take several times as long as handing tasks to the
+// common pool and joining them, it is split into chunks that run in
+// parallel, and their matches are joined back in catalog order. The
+// hand-off cost is measured once, by the first scan long enough to ask, so
+// the point where splitting pays follows both the machine and how costly
+// the query's filter is.
+class CatalogScan {
+  private static final int SAMPLE = 4096;
+  private static final int CHUNKS_PER_THREAD = 4;
+  private static final int THREADS = Runtime.getRuntime().availableProcessors();
+  // Not measured in a static initializer: the pool's threads would wait on
+  // this class's initialization while it waits on them
+  private static volatile long parallelNanos = THREADS > 1 ? -1 : Long.MAX_VALUE;
+
+  private Book[] books;
+  private long[] sequences;
+  private int size;
+  private int live;
+
+  CatalogScan() {
+    this(Collections.emptyList());
+  }
+
+  // books must be in sequence order
+  CatalogScan(List<Book> ordered) {
+    books = ordered.toArray(new Book[Math.max(16, ordered.size())]);
+    sequences = new long[books.length];
+    size = live = ordered.size();
+    for (int i = 0; i < size; i++)
+      sequences[i] = books[i].getSequence();
+  }
+
+  // book's sequence must be above every other book's
+  void add(Book book) {
+    if (size == books.length) {
+      int capacity = size + (size >> 1);
+      books = Arrays.copyOf(books, capacity);
+      sequences = Arrays.copyOf(sequences, capacity);
+    }
+    books[size] = book;
+    sequences[size++] = book.getSequence();
+    live++;
+  }
+
+  // book must still carry the sequence it was added with
+  void remove(Book book) {
+    int slot = find(book.getSequence());
+    if (slot < 0 || books[slot] != book)
+      return;
+    books[slot] = null;
+    if (--live < size / 2)
+      compact();
+  }
+
+  // Books matching filter, in catalog order
+  List<Book> filter(Predicate<Book> filter) {
+    int sampled = Math.min(size, SAMPLE);
+    long start = System.nanoTime();
+    List<Book> matches = filter(books, 0, sampled, filter);
+    if (sampled == size)
+      return matches;
+    long estimate = (System.nanoTime() - start) * (size - sampled) / sampled;
+    if (parallelNanos < 0)
+      parallelNanos = 8 * dispatchNanos();
+    if (estimate < parallelNanos) {
+      matches.addAll(filter(books, sampled, size, filter));
+      return matches;
+    }
+
+    Book[] snapshot = books;
+    int end = size;
+    int chunks = THREADS * CHUNKS_PER_THREAD;
+    int chunk = (end - sampled + chunks - 1) / chunks;
+    List<ForkJoinTask<List<Book>>> tasks = new ArrayList<>(chunks);
+    for (int from = sampled + chunk; from < end; from += chunk) {
+      int low = from;
+      int high = Math.min(end, from + chunk);
+      tasks.add(ForkJoinPool.commonPool().submit(() -> filter(snapshot, low, high, filter)));
+    }
+    matches.addAll(filter(snapshot, sampled, Math.min(end, sampled + chunk), filter));
+    for (ForkJoinTask<List<Book>> task : tasks)
+      matches.addAll(task.join());
+    return matches;
+  }
+
+  private static List<Book> filter(Book[] books, int from, int to, Predicate<Book> filter) {
+    List<Book> matches = new ArrayList<>();
+    for (int i = from; i < to; i++) {
+      Book book = books[i];
+      if (book != null && filter.test(book))
+        matches.add(book);
+    }
+    return matches;
+  }
+
+  // Sequence numbers are handed out one by one, so they are spread evenly
+  // enough that a few interpolation steps land next to the slot; binary
+  // search takes over for whatever range is left
+  private int find(long sequence) {
+    int low = 0;
+    int high = size - 1;
+    for (int step = 0; step < 4 && low < high; step++) {
+      long first = sequences[low];
+      long last = sequences[high];
+      if (sequence <= first || sequence >= last)
+        break;
+      int guess = low + (int) ((sequence - first) * (high - low) / (last - first));
+      if (sequences[guess] == sequence)
+        return guess;
+      if (sequences[guess] < sequence)
+        low = guess + 1;
+      else
+        high = guess - 1;
+    }
+    return Arrays.binarySearch(sequences, low, high + 1, sequence);
+  }
+
+  private void compact() {
+    int kept = 0;
+    for (int i = 0; i < size; i++) {
+      if (books[i] != null) {
+        books[kept] = books[i];
+        sequences[kept++] = sequences[i];
+      }
+    }
+    Arrays.fill(books, kept, size, null);
+    size = kept;
+  }
+
+  // Median time to submit one empty task per extra core and join them all
+  private static long dispatchNanos() {
+    long[] rounds = new long[31];
+    for (int round = 0; round < rounds.length; round++) {
+      long start = System.nanoTime();
+      List<ForkJoinTask<?>> tasks = new ArrayList<>(THREADS - 1);
+      for (int i = 1; i < THREADS; i++)
+        tasks.add(ForkJoinPool.commonPool().submit(() -> { }));
+      for (ForkJoinTask<?> task : tasks)
+        task.join();
+      rounds[round] = System.nanoTime() - start;
+    }
+    Arrays.sort(rounds);
+    return rounds[rounds.length / 2];
+  }
+}
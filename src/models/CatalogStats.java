@@ -0,0 +1,46 @@
+package models;
+
+import java.util.Collections;
+import java.util.Map;
+
+// Catalog counters at one point in time, as shown on the dashboard
+public class CatalogStats {
+  private final int totalBooks;
+  private final int issuedBooks;
+  private final int overdueBooks;
+  private final int authors;
+  private final Map<String, Integer> booksByGenre;
+
+  public CatalogStats(int totalBooks, int issuedBooks, int overdueBooks, int authors,
+      Map<String, Integer> booksByGenre) {
+    this.totalBooks = totalBooks;
+    this.issuedBooks = issuedBooks;
+    this.overdueBooks = overdueBooks;
+    this.authors = authors;
+    this.booksByGenre = Collections.unmodifiableMap(booksByGenre);
+  }
+
+  public int getTotalBooks() {
+    return totalBooks;
+  }
+
+  public int getAvailableBooks() {
+    return totalBooks - issuedBooks;
+  }
+
+  public int getIssuedBooks() {
+    return issuedBooks;
+  }
+
+  public int getOverdueBooks() {
+    return overdueBooks;
+  }
+
+  public int getAuthors() {
+    return authors;
+  }
+
+  public Map<String, Integer> getBooksByGenre() {
+    return booksByGenre;
+  }
+}
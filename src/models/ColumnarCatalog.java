@@ -0,0 +1,742 @@
+package models;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+
+// The catalog as struct-of-arrays instead of one Book object per title, for
+// catalogs too large to hold as a Library. A row's ISBN and title are UTF-8
+// bytes packed back to back in one array; author, genre and borrower are ids
+// into per-column dictionaries, so a name shared by thousands of books is
+// stored once; loan dates are epoch-millis columns and the issued flags a
+// BitSet. Rows are in catalog order: a re-added book is appended and its old
+// row dropped, while issue and return are written in place. Books handed out
+// are views built for that call; changes only reach the catalog through add
+// and updateLoan. Packed text is limited to 2 GB.
+public class ColumnarCatalog {
+  private static final int MAGIC = 0x4C4D5343; // "LMSC"
+  private static final int VERSION = 1;
+  private static final long NO_DATE = Long.MIN_VALUE;
+  private static final int MAX_TEXT = Integer.MAX_VALUE - 8;
+
+  // Distinct values of one column; id 0 is null. Counts let stats and
+  // compaction tell which ids are still in use.
+  private static class Dictionary {
+    String[] values = new String[16];
+    int[] counts = new int[16];
+    int size = 1;
+    int inUse;
+    final Map<String, Integer> ids = new HashMap<>();
+
+    int acquire(String value) {
+      int id = 0;
+      if (value != null) {
+        Integer existing = ids.get(value);
+        if (existing != null) {
+          id = existing;
+        } else {
+          id = size++;
+          if (id == values.length) {
+            values = Arrays.copyOf(values, id * 2);
+            counts = Arrays.copyOf(counts, id * 2);
+          }
+          values[id] = value;
+          ids.put(value, id);
+        }
+      }
+      if (counts[id]++ == 0)
+        inUse++;
+      return id;
+    }
+
+    void release(int id) {
+      if (--counts[id] == 0)
+        inUse--;
+    }
+
+    // -1 when no row has ever held value
+    int idOf(String value) {
+      if (value == null)
+        return 0;
+      Integer id = ids.get(value);
+      return id == null ? -1 : id;
+    }
+  }
+
+  private int rows;
+  private int size;
+  private int issuedCount;
+  private final BitSet live = new BitSet();
+  private final BitSet issued = new BitSet();
+  // Row r's ISBN is text[start[r], titleStart[r]) and its title runs up to
+  // the next row's start, or textEnd for the last row
+  private byte[] text = new byte[1024];
+  private int textEnd;
+  private int[] start = new int[16];
+  private int[] titleStart = new int[16];
+  private int[] isbnHash = new int[16];
+  private int[] author = new int[16];
+  private int[] genre = new int[16];
+  private int[] borrower = new int[16];
+  private long[] issueDate = new long[16];
+  private long[] dueDate = new long[16];
+  private Dictionary authors = new Dictionary();
+  private Dictionary genres = new Dictionary();
+  private Dictionary borrowers = new Dictionary();
+  // Open-addressed ISBN -> row + 1; 0 is a free slot
+  private int[] slots = new int[16];
+
+  // A book whose ISBN is already in the catalog replaces it and moves to the end
+  public void add(Book book) {
+    byte[] isbn = utf8(book.getIsbn());
+    byte[] title = utf8(book.getTitle());
+    int hash = hash(isbn, 0, isbn.length);
+    int slot = slotOf(isbn, hash);
+    if (slots[slot] != 0) {
+      kill(slots[slot] - 1);
+      unlink(slot);
+    }
+    reserve(isbn.length + title.length);
+
+    int row = rows++;
+    start[row] = textEnd;
+    System.arraycopy(isbn, 0, text, textEnd, isbn.length);
+    titleStart[row] = textEnd + isbn.length;
+    System.arraycopy(title, 0, text, titleStart[row], title.length);
+    textEnd = titleStart[row] + title.length;
+    isbnHash[row] = hash;
+    author[row] = authors.acquire(book.getAuthor());
+    genre[row] = genres.acquire(book.getGenre());
+    borrower[row] = borrowers.acquire(book.getIssuedTo());
+    issueDate[row] = NO_DATE;
+    dueDate[row] = NO_DATE;
+    live.set(row);
+    size++;
+    writeLoan(row, book);
+    link(row);
+  }
+
+  // Writes a book's loan state over its row; a book not in the catalog is added
+  public void updateLoan(Book book) {
+    byte[] isbn = utf8(book.getIsbn());
+    int slot = slotOf(isbn, hash(isbn, 0, isbn.length));
+    if (slots[slot] == 0) {
+      add(book);
+      return;
+    }
+    int row = slots[slot] - 1;
+    int next = borrowers.acquire(book.getIssuedTo());
+    borrowers.release(borrower[row]);
+    borrower[row] = next;
+    writeLoan(row, book);
+  }
+
+  public boolean remove(String isbn) {
+    byte[] key = utf8(isbn);
+    int slot = slotOf(key, hash(key, 0, key.length));
+    if (slots[slot] == 0)
+      return false;
+    kill(slots[slot] - 1);
+    unlink(slot);
+    if (rows > 1024 && size < rows / 2)
+      adopt(copy());
+    return true;
+  }
+
+  public Book find(String isbn) {
+    byte[] key = utf8(isbn);
+    int slot = slotOf(key, hash(key, 0, key.length));
+    return slots[slot] == 0 ? null : view(slots[slot] - 1);
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public int issuedCount() {
+    return issuedCount;
+  }
+
+  public void forEach(Consumer<Book> action) {
+    for (int row = live.nextSetBit(0); row >= 0; row = live.nextSetBit(row + 1))
+      action.accept(view(row));
+  }
+
+  public List<Book> getAllBooks() {
+    List<Book> books = new ArrayList<>(size);
+    forEach(books::add);
+    return books;
+  }
+
+  public List<Book> getAvailableBooks() {
+    List<Book> books = new ArrayList<>(size - issuedCount);
+    for (int row = live.nextSetBit(0); row >= 0; row = live.nextSetBit(row + 1)) {
+      if (!issued.get(row))
+        books.add(view(row));
+    }
+    return books;
+  }
+
+  public List<Book> getIssuedBooks() {
+    List<Book> books = new ArrayList<>(issuedCount);
+    for (int row = issued.nextSetBit(0); row >= 0; row = issued.nextSetBit(row + 1))
+      books.add(view(row));
+    return books;
+  }
+
+  // Same matches as Library.searchBooks, in catalog order
+  public List<Book> search(String keyword) {
+    return select(live, keywordTest(keyword));
+  }
+
+  // Same results as Library.query. The query is compiled to a test on the
+  // columns: equality on author, genre or borrower compares dictionary ids
+  // and only the rows that pass are decoded. An ISBN narrows the walk to
+  // its row, and a query that can only match issued books walks the issued
+  // set.
+  public List<Book> query(BookQuery query) {
+    return select(rowsFor(query), compile(query));
+  }
+
+  private List<Book> select(BitSet rows, IntPredicate test) {
+    List<Book> books = new ArrayList<>();
+    for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+      if (test.test(row))
+        books.add(view(row));
+    }
+    return books;
+  }
+
+  // Rows that can hold a match; never modified by the caller
+  private BitSet rowsFor(BookQuery query) {
+    switch (query.getKind()) {
+      case ISBN:
+        byte[] key = utf8(query.getValue());
+        int slot = slots[slotOf(key, hash(key, 0, key.length))];
+        BitSet row = new BitSet();
+        if (slot != 0)
+          row.set(slot - 1);
+        return row;
+      case ISSUED:
+      case ISSUED_TO:
+      case DUE_BETWEEN:
+        return issued;
+      case AND:
+        BitSet smallest = live;
+        for (BookQuery operand : query.getOperands()) {
+          BitSet rows = rowsFor(operand);
+          if (rows != live && (smallest == live || rows.cardinality() < smallest.cardinality()))
+            smallest = rows;
+        }
+        return smallest;
+      case OR:
+        BitSet union = new BitSet();
+        for (BookQuery operand : query.getOperands()) {
+          BitSet rows = rowsFor(operand);
+          if (rows == live)
+            return live;
+          union.or(rows);
+        }
+        return union;
+      default:
+        return live;
+    }
+  }
+
+  private IntPredicate compile(BookQuery query) {
+    switch (query.getKind()) {
+      case ISBN:
+        byte[] key = utf8(query.getValue());
+        int slot = slots[slotOf(key, hash(key, 0, key.length))];
+        return row -> row == slot - 1;
+      case TITLE:
+        return titleTest(query.getLowerValue());
+      case AUTHOR:
+        int authorId = authors.idOf(query.getValue());
+        return row -> author[row] == authorId;
+      case GENRE:
+        int genreId = genres.idOf(query.getValue());
+        return row -> genre[row] == genreId;
+      case ISSUED:
+        return issued::get;
+      case AVAILABLE:
+        return row -> !issued.get(row);
+      case ISSUED_TO:
+        int borrowerId = borrowers.idOf(query.getValue());
+        return row -> borrowerId > 0 && borrower[row] == borrowerId && issued.get(row);
+      case DUE_BETWEEN:
+        long from = query.getFrom();
+        long to = query.getTo();
+        return row -> issued.get(row) && dueDate[row] != NO_DATE && dueDate[row] >= from && dueDate[row] < to;
+      case KEYWORD:
+        return keywordTest(query.getValue());
+      case AND:
+        IntPredicate all = row -> true;
+        for (BookQuery operand : query.getOperands())
+          all = all.and(compile(operand));
+        return all;
+      case OR:
+        IntPredicate any = row -> false;
+        for (BookQuery operand : query.getOperands())
+          any = any.or(compile(operand));
+        return any;
+      default:
+        return compile(query.getOperands().get(0)).negate();
+    }
+  }
+
+  // Authors are matched once per dictionary entry; titles and ISBNs are
+  // matched on their bytes
+  private IntPredicate keywordTest(String keyword) {
+    String lowerKeyword = keyword.toLowerCase();
+    BitSet authorHits = new BitSet(authors.size);
+    for (int id = 1; id < authors.size; id++) {
+      if (authors.counts[id] > 0 && authors.values[id].toLowerCase().contains(lowerKeyword))
+        authorHits.set(id);
+    }
+    byte[] isbnNeedle = utf8(keyword);
+    IntPredicate title = titleTest(lowerKeyword);
+    return row -> authorHits.get(author[row]) || contains(text, start[row], titleStart[row], isbnNeedle, false)
+        || title.test(row);
+  }
+
+  // A title is only decoded when it has non-ASCII text and the byte check
+  // could not decide
+  private IntPredicate titleTest(String lowerText) {
+    byte[] needle = isAscii(lowerText) ? utf8(lowerText) : null;
+    return row -> {
+      int titleEnd = titleEnd(row);
+      if (needle != null && contains(text, titleStart[row], titleEnd, needle, true))
+        return true;
+      if (needle != null && isAscii(text, titleStart[row], titleEnd))
+        return false;
+      return decode(titleStart[row], titleEnd).toLowerCase().contains(lowerText);
+    };
+  }
+
+  // Issued books lent to username, in catalog order
+  public List<Book> findIssuedTo(String username) {
+    List<Book> books = new ArrayList<>();
+    int id = borrowers.idOf(username);
+    if (id <= 0)
+      return books;
+    for (int row = issued.nextSetBit(0); row >= 0; row = issued.nextSetBit(row + 1)) {
+      if (borrower[row] == id)
+        books.add(view(row));
+    }
+    return books;
+  }
+
+  public int countIssuedTo(String username) {
+    int id = borrowers.idOf(username);
+    if (id <= 0)
+      return 0;
+    int count = 0;
+    for (int row = issued.nextSetBit(0); row >= 0; row = issued.nextSetBit(row + 1)) {
+      if (borrower[row] == id)
+        count++;
+    }
+    return count;
+  }
+
+  // Issued books due in [from, to), earliest first
+  public List<Book> dueBetween(long from, long to) {
+    int[] found = new int[16];
+    int count = 0;
+    for (int row = issued.nextSetBit(0); row >= 0; row = issued.nextSetBit(row + 1)) {
+      long due = dueDate[row];
+      if (due != NO_DATE && due >= from && due < to) {
+        if (count == found.length)
+          found = Arrays.copyOf(found, count * 2);
+        found[count++] = row;
+      }
+    }
+    Integer[] order = new Integer[count];
+    for (int i = 0; i < count; i++)
+      order[i] = found[i];
+    Arrays.sort(order, Comparator.comparingLong(row -> dueDate[row]));
+    List<Book> books = new ArrayList<>(count);
+    for (int row : order)
+      books.add(view(row));
+    return books;
+  }
+
+  // Counts come from the dictionaries; only the overdue figure scans the
+  // due-date column of the issued rows
+  public CatalogStats getStats() {
+    long now = System.currentTimeMillis();
+    int overdue = 0;
+    for (int row = issued.nextSetBit(0); row >= 0; row = issued.nextSetBit(row + 1)) {
+      if (dueDate[row] != NO_DATE && dueDate[row] < now)
+        overdue++;
+    }
+    Map<String, Integer> byGenre = new TreeMap<>(Comparator.nullsFirst(Comparator.<String>naturalOrder()));
+    for (int id = 0; id < genres.size; id++) {
+      if (genres.counts[id] > 0)
+        byGenre.put(genres.values[id], genres.counts[id]);
+    }
+    return new CatalogStats(size, issuedCount, overdue, authors.inUse, byGenre);
+  }
+
+  // Titles and authors starting with prefix, ignoring case, the ones shared
+  // by the most books first; authors are counted from the dictionary
+  public List<String> suggest(String prefix, int limit) {
+    List<String> suggestions = new ArrayList<>();
+    if (prefix.isEmpty() || limit <= 0)
+      return suggestions;
+    Map<String, Integer> counts = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    for (int id = 1; id < authors.size; id++) {
+      String value = authors.values[id];
+      if (authors.counts[id] > 0 && !value.isEmpty() && value.regionMatches(true, 0, prefix, 0, prefix.length()))
+        counts.merge(value, authors.counts[id], Integer::sum);
+    }
+    byte[] needle = isAscii(prefix) ? utf8(prefix.toLowerCase(Locale.ROOT)) : null;
+    for (int row = live.nextSetBit(0); row >= 0; row = live.nextSetBit(row + 1)) {
+      int from = titleStart[row];
+      int titleEnd = titleEnd(row);
+      if (from == titleEnd)
+        continue;
+      // Decided on the bytes when the title's first prefix.length characters are ASCII
+      if (needle != null && titleEnd - from >= needle.length && isAscii(text, from, from + needle.length)) {
+        if (!startsWith(text, from, needle))
+          continue;
+      } else if (needle != null && isAscii(text, from, titleEnd)) {
+        continue;
+      }
+      String title = decode(from, titleEnd);
+      if (title.regionMatches(true, 0, prefix, 0, prefix.length()))
+        counts.merge(title, 1, Integer::sum);
+    }
+    counts.entrySet().stream()
+        .sorted((a, b) -> Integer.compare(b.getValue(), a.getValue()))
+        .limit(limit)
+        .forEach(entry -> suggestions.add(entry.getKey()));
+    return suggestions;
+  }
+
+  // A compacted copy: live rows only, renumbered in order, and dictionaries
+  // without the values no row uses any more
+  public ColumnarCatalog copy() {
+    ColumnarCatalog copy = new ColumnarCatalog();
+    copy.grow(Math.max(16, size));
+    copy.text = new byte[Math.max(1024, liveTextLength())];
+    for (int row = live.nextSetBit(0); row >= 0; row = live.nextSetBit(row + 1)) {
+      int to = copy.rows++;
+      int length = titleEnd(row) - start[row];
+      copy.start[to] = copy.textEnd;
+      copy.titleStart[to] = copy.textEnd + titleStart[row] - start[row];
+      System.arraycopy(text, start[row], copy.text, copy.textEnd, length);
+      copy.textEnd += length;
+      copy.isbnHash[to] = isbnHash[row];
+      copy.author[to] = copy.authors.acquire(authors.values[author[row]]);
+      copy.genre[to] = copy.genres.acquire(genres.values[genre[row]]);
+      copy.borrower[to] = copy.borrowers.acquire(borrowers.values[borrower[row]]);
+      copy.issueDate[to] = issueDate[row];
+      copy.dueDate[to] = dueDate[row];
+      if (issued.get(row)) {
+        copy.issued.set(to);
+        copy.issuedCount++;
+      }
+    }
+    copy.size = copy.rows;
+    copy.live.set(0, copy.rows);
+    copy.rehash(tableSizeFor(copy.size));
+    return copy;
+  }
+
+  // Column by column, live rows only
+  public void writeTo(DataOutput out) throws IOException {
+    ColumnarCatalog compact = rows == size ? this : copy();
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    compact.writeDictionary(out, compact.authors);
+    compact.writeDictionary(out, compact.genres);
+    compact.writeDictionary(out, compact.borrowers);
+    out.writeInt(compact.rows);
+    out.writeInt(compact.textEnd);
+    out.write(compact.text, 0, compact.textEnd);
+    for (int[] column : new int[][] { compact.start, compact.titleStart, compact.author, compact.genre, compact.borrower }) {
+      for (int row = 0; row < compact.rows; row++)
+        out.writeInt(column[row]);
+    }
+    for (long[] column : new long[][] { compact.issueDate, compact.dueDate }) {
+      for (int row = 0; row < compact.rows; row++)
+        out.writeLong(column[row]);
+    }
+    long[] words = compact.issued.toLongArray();
+    out.writeInt(words.length);
+    for (long word : words)
+      out.writeLong(word);
+  }
+
+  public static ColumnarCatalog readFrom(DataInput in) throws IOException {
+    if (in.readInt() != MAGIC)
+      throw new IOException("Not a columnar catalog");
+    int version = in.readInt();
+    if (version > VERSION)
+      throw new IOException("Unsupported columnar catalog version " + version);
+    ColumnarCatalog catalog = new ColumnarCatalog();
+    String[] authorValues = readDictionary(in);
+    String[] genreValues = readDictionary(in);
+    String[] borrowerValues = readDictionary(in);
+    int rows = in.readInt();
+    catalog.grow(Math.max(16, rows));
+    catalog.textEnd = in.readInt();
+    catalog.text = new byte[Math.max(1024, catalog.textEnd)];
+    in.readFully(catalog.text, 0, catalog.textEnd);
+    for (int[] column : new int[][] { catalog.start, catalog.titleStart, catalog.author, catalog.genre, catalog.borrower }) {
+      for (int row = 0; row < rows; row++)
+        column[row] = in.readInt();
+    }
+    for (long[] column : new long[][] { catalog.issueDate, catalog.dueDate }) {
+      for (int row = 0; row < rows; row++)
+        column[row] = in.readLong();
+    }
+    long[] words = new long[in.readInt()];
+    for (int i = 0; i < words.length; i++)
+      words[i] = in.readLong();
+    catalog.issued.or(BitSet.valueOf(words));
+
+    // Ids are re-acquired so the dictionaries count their rows again
+    for (int row = 0; row < rows; row++) {
+      catalog.author[row] = catalog.authors.acquire(authorValues[catalog.author[row]]);
+      catalog.genre[row] = catalog.genres.acquire(genreValues[catalog.genre[row]]);
+      catalog.borrower[row] = catalog.borrowers.acquire(borrowerValues[catalog.borrower[row]]);
+      catalog.isbnHash[row] = hash(catalog.text, catalog.start[row], catalog.titleStart[row]);
+    }
+    catalog.rows = rows;
+    catalog.size = rows;
+    catalog.issuedCount = catalog.issued.cardinality();
+    catalog.live.set(0, rows);
+    catalog.rehash(tableSizeFor(rows));
+    return catalog;
+  }
+
+  private void writeDictionary(DataOutput out, Dictionary dictionary) throws IOException {
+    out.writeInt(dictionary.size);
+    for (int id = 1; id < dictionary.size; id++) {
+      byte[] bytes = utf8(dictionary.values[id]);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+  }
+
+  private static String[] readDictionary(DataInput in) throws IOException {
+    String[] values = new String[in.readInt()];
+    for (int id = 1; id < values.length; id++) {
+      byte[] bytes = new byte[in.readInt()];
+      in.readFully(bytes);
+      values[id] = new String(bytes, StandardCharsets.UTF_8);
+    }
+    return values;
+  }
+
+  private Book view(int row) {
+    Book book = new Book(decode(start[row], titleStart[row]), decode(titleStart[row], titleEnd(row)),
+        authors.values[author[row]], genres.values[genre[row]]);
+    book.setIssued(issued.get(row));
+    book.setIssuedTo(borrowers.values[borrower[row]]);
+    if (issueDate[row] != NO_DATE)
+      book.setIssueDate(new Date(issueDate[row]));
+    if (dueDate[row] != NO_DATE)
+      book.setDueDate(new Date(dueDate[row]));
+    return book;
+  }
+
+  private void writeLoan(int row, Book book) {
+    if (book.isIssued() != issued.get(row)) {
+      issued.set(row, book.isIssued());
+      issuedCount += book.isIssued() ? 1 : -1;
+    }
+    issueDate[row] = book.getIssueDate() != null ? book.getIssueDate().getTime() : NO_DATE;
+    dueDate[row] = book.getDueDate() != null ? book.getDueDate().getTime() : NO_DATE;
+  }
+
+  // Leaves the row's bytes in place until the next compaction
+  private void kill(int row) {
+    live.clear(row);
+    size--;
+    if (issued.get(row)) {
+      issued.clear(row);
+      issuedCount--;
+    }
+    authors.release(author[row]);
+    genres.release(genre[row]);
+    borrowers.release(borrower[row]);
+  }
+
+  // Room for one more row with length bytes of text; dead rows are dropped
+  // first when that is what would free the space
+  private void reserve(int length) {
+    if ((long) textEnd + length > MAX_TEXT && size < rows) {
+      adopt(copy());
+    }
+    if ((long) textEnd + length > MAX_TEXT)
+      throw new IllegalStateException("Columnar catalog text is full");
+    if (textEnd + length > text.length)
+      text = Arrays.copyOf(text, (int) Math.min(MAX_TEXT, Math.max((long) text.length * 2, textEnd + length)));
+    if (rows == start.length)
+      grow(rows * 2);
+  }
+
+  private void grow(int capacity) {
+    start = Arrays.copyOf(start, capacity);
+    titleStart = Arrays.copyOf(titleStart, capacity);
+    isbnHash = Arrays.copyOf(isbnHash, capacity);
+    author = Arrays.copyOf(author, capacity);
+    genre = Arrays.copyOf(genre, capacity);
+    borrower = Arrays.copyOf(borrower, capacity);
+    issueDate = Arrays.copyOf(issueDate, capacity);
+    dueDate = Arrays.copyOf(dueDate, capacity);
+  }
+
+  private void adopt(ColumnarCatalog compact) {
+    rows = compact.rows;
+    size = compact.size;
+    issuedCount = compact.issuedCount;
+    live.clear();
+    live.or(compact.live);
+    issued.clear();
+    issued.or(compact.issued);
+    text = compact.text;
+    textEnd = compact.textEnd;
+    start = compact.start;
+    titleStart = compact.titleStart;
+    isbnHash = compact.isbnHash;
+    author = compact.author;
+    genre = compact.genre;
+    borrower = compact.borrower;
+    issueDate = compact.issueDate;
+    dueDate = compact.dueDate;
+    authors = compact.authors;
+    genres = compact.genres;
+    borrowers = compact.borrowers;
+    slots = compact.slots;
+  }
+
+  private int liveTextLength() {
+    long length = 0;
+    for (int row = live.nextSetBit(0); row >= 0; row = live.nextSetBit(row + 1))
+      length += titleEnd(row) - start[row];
+    return (int) length;
+  }
+
+  private int titleEnd(int row) {
+    return row + 1 < rows ? start[row + 1] : textEnd;
+  }
+
+  // The slot holding isbn, or the free slot where it would go
+  private int slotOf(byte[] isbn, int hash) {
+    int mask = slots.length - 1;
+    int slot = mix(hash) & mask;
+    while (slots[slot] != 0) {
+      int row = slots[slot] - 1;
+      if (isbnHash[row] == hash && Arrays.equals(text, start[row], titleStart[row], isbn, 0, isbn.length))
+        return slot;
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  private void link(int row) {
+    if (size * 2 > slots.length)
+      rehash(slots.length * 2);
+    else
+      place(row);
+  }
+
+  private void place(int row) {
+    int mask = slots.length - 1;
+    int slot = mix(isbnHash[row]) & mask;
+    while (slots[slot] != 0)
+      slot = (slot + 1) & mask;
+    slots[slot] = row + 1;
+  }
+
+  private void rehash(int capacity) {
+    slots = new int[capacity];
+    for (int row = live.nextSetBit(0); row >= 0; row = live.nextSetBit(row + 1))
+      place(row);
+  }
+
+  // Backward-shift deletion, so lookups never have to step over tombstones
+  private void unlink(int slot) {
+    int mask = slots.length - 1;
+    int hole = slot;
+    for (int next = (hole + 1) & mask; slots[next] != 0; next = (next + 1) & mask) {
+      int home = mix(isbnHash[slots[next] - 1]) & mask;
+      if (((next - home) & mask) >= ((next - hole) & mask)) {
+        slots[hole] = slots[next];
+        hole = next;
+      }
+    }
+    slots[hole] = 0;
+  }
+
+  private static int tableSizeFor(int entries) {
+    int capacity = 16;
+    while (capacity < entries * 2L)
+      capacity <<= 1;
+    return capacity;
+  }
+
+  private String decode(int from, int to) {
+    return new String(text, from, to - from, StandardCharsets.UTF_8);
+  }
+
+  private static byte[] utf8(String value) {
+    return value.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static int hash(byte[] bytes, int from, int to) {
+    int hash = 0;
+    for (int i = from; i < to; i++)
+      hash = 31 * hash + bytes[i];
+    return hash;
+  }
+
+  private static int mix(int hash) {
+    int mixed = hash * 0x9E3779B9;
+    return mixed ^ (mixed >>> 16);
+  }
+
+  // Case folding only covers ASCII letters; callers decode non-ASCII text
+  private static boolean contains(byte[] text, int from, int to, byte[] needle, boolean ignoreCase) {
+    outer:
+    for (int i = from, last = to - needle.length; i <= last; i++) {
+      for (int j = 0; j < needle.length; j++) {
+        byte b = text[i + j];
+        if (ignoreCase && b >= 'A' && b <= 'Z')
+          b += 'a' - 'A';
+        if (b != needle[j])
+          continue outer;
+      }
+      return true;
+    }
+    return false;
+  }
+
+  private static boolean startsWith(byte[] text, int from, byte[] lowerNeedle) {
+    return contains(text, from, from + lowerNeedle.length, lowerNeedle, true);
+  }
+
+  private static boolean isAscii(byte[] text, int from, int to) {
+    for (int i = from; i < to; i++) {
+      if (text[i] < 0)
+        return false;
+    }
+    return true;
+  }
+
+  private static boolean isAscii(String value) {
+    for (int i = 0; i < value.length(); i++) {
+      if (value.charAt(i) >= 0x80)
+        return false;
+    }
+    return true;
+  }
+}
@@ -0,0 +1,123 @@
+package models;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+// Issued books bucketed by the day they fall due. Overdue and due-soon
+// queries only open the buckets of the days they ask about. The overdue
+// count is kept incrementally: each count moves its boundary up to now and
+// adds the loans that fell due in between, which again only touches the
+// buckets of the days since the previous count. Paging through the loans
+// by due date uses a separate ordered set, since it needs every loan in
+// order rather than whole days.
+class DueDateIndex {
+  private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+  // The due date is kept with the book, which may already have been changed
+  // by the time it is removed
+  private static class Loan {
+    final Book book;
+    final long due;
+
+    Loan(Book book, long due) {
+      this.book = book;
+      this.due = due;
+    }
+  }
+
+  private final TreeMap<Long, Map<String, Loan>> buckets = new TreeMap<>();
+  private final Map<String, Loan> loans = new HashMap<>();
+  private final TreeSet<Loan> ordered = new TreeSet<>(
+      Comparator.comparingLong((Loan loan) -> loan.due).thenComparing(loan -> loan.book.getIsbn()));
+  // Loans due before this are included in overdue
+  private long boundary = Long.MIN_VALUE;
+  private int overdue;
+
+  void add(Book book, long due) {
+    remove(book.getIsbn());
+    Loan loan = new Loan(book, due);
+    loans.put(book.getIsbn(), loan);
+    ordered.add(loan);
+    buckets.computeIfAbsent(day(due), d -> new HashMap<>()).put(book.getIsbn(), loan);
+    if (due < boundary)
+      overdue++;
+  }
+
+  void remove(String isbn) {
+    Loan loan = loans.remove(isbn);
+    if (loan == null)
+      return;
+    ordered.remove(loan);
+    Map<String, Loan> bucket = buckets.get(day(loan.due));
+    bucket.remove(isbn);
+    if (bucket.isEmpty())
+      buckets.remove(day(loan.due));
+    if (loan.due < boundary)
+      overdue--;
+  }
+
+  int overdueCount(long now) {
+    if (now > boundary) {
+      int crossed = 0;
+      for (Map<String, Loan> bucket : range(boundary, now)) {
+        for (Loan loan : bucket.values()) {
+          if (loan.due >= boundary && loan.due < now)
+            crossed++;
+        }
+      }
+      overdue += crossed;
+      boundary = now;
+    }
+    return overdue;
+  }
+
+  // Loans due in [from, to), earliest first
+  List<Book> dueBetween(long from, long to) {
+    List<Loan> matches = new ArrayList<>();
+    for (Map<String, Loan> bucket : range(from, to)) {
+      for (Loan loan : bucket.values()) {
+        if (loan.due >= from && loan.due < to)
+          matches.add(loan);
+      }
+    }
+    matches.sort(Comparator.comparingLong(loan -> loan.due));
+    List<Book> due = new ArrayList<>(matches.size());
+    for (Loan loan : matches)
+      due.add(loan.book);
+    return due;
+  }
+
+  // Up to limit loans after the given book in (due date, ISBN) order, or
+  // from the earliest when it is null
+  List<Book> after(Book from, int limit) {
+    SortedSet<Loan> rest = from == null ? ordered
+        : ordered.tailSet(new Loan(from, from.getDueDate().getTime()), false);
+    List<Book> books = new ArrayList<>(Math.min(limit, loans.size()));
+    for (Loan loan : rest) {
+      if (books.size() == limit)
+        break;
+      books.add(loan.book);
+    }
+    return books;
+  }
+
+  // Upper bound on dueBetween(from, to).size(): the loans in the buckets it
+  // would open, counted without looking inside them
+  int estimateBetween(long from, long to) {
+    int count = 0;
+    for (Map<String, Loan> bucket : range(from, to))
+      count += bucket.size();
+    return count;
+  }
+
+  // Buckets of the days [from, to) touches
+  private Collection<Map<String, Loan>> range(long from, long to) {
+    if (from >= to)
+      return Collections.emptyList();
+    return buckets.subMap(day(from), true, day(to - 1), true).values();
+  }
+
+  private static long day(long time) {
+    return Math.floorDiv(time, DAY);
+  }
+}
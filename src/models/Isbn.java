@@ -0,0 +1,93 @@
+package models;
+
+// ISBN-10 and ISBN-13 parsing. Catalog keys stay Strings because not every
+// identifier in a catalog is an ISBN, but a valid ISBN is stored in one
+// canonical form: its ISBN-13, 13 digits without separators, which also
+// packs into a long.
+public final class Isbn {
+  public static final long INVALID = -1;
+
+  private Isbn() {
+  }
+
+  // The ISBN-13 of text, ignoring hyphens and spaces; an ISBN-10 is converted
+  // with the 978 prefix. INVALID unless the check digit matches.
+  public static long parse(String text) {
+    if (text == null)
+      return INVALID;
+    int[] digits = new int[13];
+    int count = 0;
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (c == '-' || c == ' ')
+        continue;
+      if (count == 13)
+        return INVALID;
+      if (c >= '0' && c <= '9')
+        digits[count++] = c - '0';
+      else if ((c == 'X' || c == 'x') && count == 9)
+        digits[count++] = 10;
+      else
+        return INVALID;
+    }
+
+    if (count == 10) {
+      int sum = 0;
+      for (int i = 0; i < 10; i++)
+        sum += (10 - i) * digits[i];
+      if (sum % 11 != 0)
+        return INVALID;
+      long code = 978;
+      for (int i = 0; i < 9; i++)
+        code = code * 10 + digits[i];
+      return code * 10 + checkDigit(code);
+    }
+    if (count != 13 || digits[9] == 10)
+      return INVALID;
+    long code = 0;
+    for (int i = 0; i < 12; i++)
+      code = code * 10 + digits[i];
+    long prefix = code / 1_000_000_000L;
+    if ((prefix != 978 && prefix != 979) || checkDigit(code) != digits[12])
+      return INVALID;
+    return code * 10 + digits[12];
+  }
+
+  // text in canonical form if it is a valid ISBN, otherwise just trimmed;
+  // null stays null
+  public static String normalize(String text) {
+    if (text == null)
+      return null;
+    long code = parse(text);
+    return code == INVALID ? text.trim() : Long.toString(code);
+  }
+
+  // The code of an ISBN already in canonical form and INVALID for anything
+  // else, so two different catalog keys never share a code. This is on every
+  // index lookup, so it checks the digits in one pass without parsing.
+  public static long encode(String isbn) {
+    if (isbn == null || isbn.length() != 13)
+      return INVALID;
+    long code = 0;
+    int sum = 0;
+    for (int i = 0; i < 13; i++) {
+      int digit = isbn.charAt(i) - '0';
+      if (digit < 0 || digit > 9)
+        return INVALID;
+      code = code * 10 + digit;
+      sum += (i % 2 == 0 ? 1 : 3) * digit;
+    }
+    long prefix = code / 10_000_000_000L;
+    return sum % 10 == 0 && (prefix == 978 || prefix == 979) ? code : INVALID;
+  }
+
+  // Weights 1 and 3 alternate from the left, so the last of the 12 digits gets 3
+  private static int checkDigit(long first12) {
+    int sum = 0;
+    for (int i = 0; i < 12; i++) {
+      sum += (i % 2 == 0 ? 3 : 1) * (int) (first12 % 10);
+      first12 /= 10;
+    }
+    return (10 - sum % 10) % 10;
+  }
+}
@@ -0,0 +1,42 @@
+package models;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// ISBN -> int slot. Canonical ISBN-13s, which is what nearly every catalog
+// key is, are found by their long code in a primitive table; any other
+// identifier falls back to an ordinary map. get and remove return -1 for a
+// missing key.
+class IsbnIndex {
+  private final LongIntMap codes = new LongIntMap();
+  private final Map<String, Integer> others = new HashMap<>();
+
+  int get(String isbn) {
+    long code = Isbn.encode(isbn);
+    if (code != Isbn.INVALID)
+      return codes.get(code);
+    Integer slot = others.get(isbn);
+    return slot == null ? -1 : slot;
+  }
+
+  void put(String isbn, int slot) {
+    long code = Isbn.encode(isbn);
+    if (code != Isbn.INVALID)
+      codes.put(code, slot);
+    else
+      others.put(isbn, slot);
+  }
+
+  int remove(String isbn) {
+    long code = Isbn.encode(isbn);
+    if (code != Isbn.INVALID)
+      return codes.remove(code);
+    Integer slot = others.remove(isbn);
+    return slot == null ? -1 : slot;
+  }
+
+  void clear() {
+    codes.clear();
+    others.clear();
+  }
+}
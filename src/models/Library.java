@@ -1,55 +1,327 @@
 package models;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
+// Books in catalog order, keyed by ISBN, with secondary indexes by author,
+// genre and borrower. Every add/remove goes through index()/unindex(), so the
+// indexes never drift from the catalog; a change to a book's loan state must
+// be applied with updateBook so the borrower index follows it.
 public class Library implements Serializable {
-  private List<Book> books;
+  // Pinned so books.dat/users.dat files written with Java serialization still load
+  // after these classes change
+  private static final long serialVersionUID = 1980937605306404658L;
+  // The serialized form is still the original list of books
+  private static final ObjectStreamField[] serialPersistentFields = {
+      new ObjectStreamField("books", List.class)
+  };
+
+  private transient BookTable books;
+  private transient Map<String, Map<String, Book>> byAuthor;
+  private transient Map<String, Map<String, Book>> byGenre;
+  private transient Map<String, Map<String, Book>> byIssuedTo;
+  // Borrower each issued book was indexed under; the Book itself may already
+  // have been changed by the time it is unindexed
+  private transient Map<String, String> indexedBorrower;
+  private transient Map<String, Book> issued;
+  private transient DueDateIndex dueDates;
+  private transient TextIndex text;
+  private transient TrigramIndex substrings;
+  private transient SuggestionIndex suggestions;
+  private transient OrderedIndex titleOrder;
+  private transient OrderedIndex authorOrder;
+  private transient OrderedIndex isbnOrder;
+  private transient CatalogScan scan;
+  private transient long nextSequence;
 
   public Library() {
-    this.books = new ArrayList<>();
+    this.books = new BookTable();
+    this.byAuthor = new HashMap<>();
+    this.byGenre = new HashMap<>();
+    this.byIssuedTo = new HashMap<>();
+    this.indexedBorrower = new HashMap<>();
+    this.issued = new LinkedHashMap<>();
+    this.dueDates = new DueDateIndex();
+    this.text = new TextIndex();
+    this.substrings = new TrigramIndex();
+    this.suggestions = new SuggestionIndex();
+    this.titleOrder = new OrderedIndex(BookSort.TITLE.comparator());
+    this.authorOrder = new OrderedIndex(BookSort.AUTHOR.comparator());
+    this.isbnOrder = new OrderedIndex(BookSort.ISBN.comparator());
+    this.scan = new CatalogScan();
+  }
+
+  // Rebuilds a library from books that already carry their sequence numbers;
+  // the list must be in sequence order
+  public static Library restore(List<Book> books) {
+    Library library = new Library();
+    library.rebuildIndexes(books);
+    if (!books.isEmpty())
+      library.nextSequence = books.get(books.size() - 1).getSequence() + 1;
+    return library;
   }
 
+  // New and re-added books go to the end of the catalog order; a book with
+  // an ISBN already in the catalog replaces it
   public void addBook(Book book) {
-    books.add(book);
+    Book previous = detach(book.getIsbn());
+    book.setSequence(nextSequence++);
+    books.put(book);
+    scan.add(book);
+    indexSecondary(book);
+    text.add(book);
+    substrings.add(book);
+    titleOrder.put(previous, book);
+    authorOrder.put(previous, book);
+    isbnOrder.put(previous, book);
+    if (previous == null || !previous.getTitle().equals(book.getTitle())
+        || !previous.getAuthor().equals(book.getAuthor())) {
+      if (previous != null)
+        unsuggest(previous);
+      suggestions.add(book.getTitle());
+      suggestions.add(book.getAuthor());
+    }
+  }
+
+  // Re-indexes a book after its loan state changed; like the remove-then-add
+  // it replaces, the book moves to the end of the catalog order
+  public void updateBook(Book book) {
+    addBook(book);
+  }
+
+  public long getNextSequence() {
+    return nextSequence;
   }
 
   public boolean removeBook(String isbn) {
-    return books.removeIf(book -> book.getIsbn().equals(isbn));
+    Book book = detach(isbn);
+    if (book == null)
+      return false;
+    text.remove(isbn);
+    substrings.remove(isbn);
+    titleOrder.remove(book);
+    authorOrder.remove(book);
+    isbnOrder.remove(book);
+    unsuggest(book);
+    return true;
+  }
+
+  // Drops a book from everything but the text, trigram, suggestion and
+  // ordered indexes, which are left alone when only the loan state changed
+  private Book detach(String isbn) {
+    Book book = books.remove(isbn);
+    if (book == null)
+      return null;
+    scan.remove(book);
+    unindex(byAuthor, book.getAuthor(), isbn);
+    unindex(byGenre, book.getGenre(), isbn);
+    String borrower = indexedBorrower.remove(isbn);
+    if (borrower != null)
+      unindex(byIssuedTo, borrower, isbn);
+    issued.remove(isbn);
+    dueDates.remove(isbn);
+    return book;
+  }
+
+  private void unsuggest(Book book) {
+    suggestions.remove(book.getTitle());
+    suggestions.remove(book.getAuthor());
   }
 
   public Book findBookByIsbn(String isbn) {
-    return books.stream()
-        .filter(book -> book.getIsbn().equals(isbn))
-        .findFirst()
-        .orElse(null);
+    return books.get(isbn);
+  }
+
+  public List<Book> findBooksByAuthor(String author) {
+    return lookup(byAuthor, author);
+  }
+
+  public List<Book> findBooksByGenre(String genre) {
+    return lookup(byGenre, genre);
+  }
+
+  public List<Book> findBooksIssuedTo(String username) {
+    return lookup(byIssuedTo, username);
+  }
+
+  // Ranked full-text search over title, author and genre words (see
+  // TextIndex for the matching rules); a query that is exactly an ISBN
+  // returns that book
+  public List<Book> searchRanked(String query, int limit) {
+    Book exact = books.get(query.trim());
+    if (exact != null)
+      return new ArrayList<>(Collections.singletonList(exact));
+    return text.search(query, limit);
+  }
+
+  // Typo-tolerant fallback: title, author and genre words within one or two
+  // edits of each query word, closest and best-scoring first
+  public List<Book> searchFuzzy(String query, int limit) {
+    return text.searchFuzzy(query, limit);
+  }
+
+  // Titles and authors starting with prefix, ignoring case, the ones shared
+  // by the most books first
+  public List<String> suggest(String prefix, int limit) {
+    return suggestions.suggest(prefix, limit);
   }
 
+  // Substring match on title, author or ISBN in catalog order. Keywords of
+  // three or more characters only check the trigram index's candidates.
   public List<Book> searchBooks(String keyword) {
     String lowerKeyword = keyword.toLowerCase();
-    return books.stream()
-        .filter(book -> book.getTitle().toLowerCase().contains(lowerKeyword) ||
-            book.getAuthor().toLowerCase().contains(lowerKeyword) ||
-            book.getIsbn().contains(keyword))
+    List<Book> candidates = substrings.candidates(keyword, lowerKeyword);
+    if (candidates == null) {
+      return scan.filter(book -> matches(book, keyword, lowerKeyword));
+    }
+    return candidates.stream()
+        .filter(book -> matches(book, keyword, lowerKeyword))
+        .sorted(Comparator.comparingLong(Book::getSequence))
         .collect(Collectors.toList());
   }
 
+  public static boolean matches(Book book, String keyword, String lowerKeyword) {
+    return book.getTitle().toLowerCase().contains(lowerKeyword) ||
+        book.getAuthor().toLowerCase().contains(lowerKeyword) ||
+        book.getIsbn().contains(keyword);
+  }
+
+  // Candidates for a query from one or more indexes, with an upper bound on
+  // how many there are that costs next to nothing to work out
+  private static class Plan {
+    final int estimate;
+    final Supplier<Collection<Book>> candidates;
+
+    Plan(int estimate, Supplier<Collection<Book>> candidates) {
+      this.estimate = estimate;
+      this.candidates = candidates;
+    }
+  }
+
+  // Books matching query, in catalog order. An AND is answered from its
+  // most selective indexed operand and an OR from every operand when each
+  // has an index; the candidates are then checked against the whole query.
+  // Only a query with no usable index (available, NOT, text shorter than a
+  // trigram) scans the catalog.
+  public List<Book> query(BookQuery query) {
+    Plan plan = plan(query);
+    if (plan == null || plan.estimate >= books.size()) {
+      return scan.filter(query::matches);
+    }
+    Set<Book> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+    List<Book> matches = new ArrayList<>();
+    for (Book book : plan.candidates.get()) {
+      if (query.matches(book) && seen.add(book))
+        matches.add(book);
+    }
+    matches.sort(Comparator.comparingLong(Book::getSequence));
+    return matches;
+  }
+
+  // Null when no index can narrow the query
+  private Plan plan(BookQuery query) {
+    switch (query.getKind()) {
+      case ISBN:
+        Book book = books.get(query.getValue());
+        return new Plan(book == null ? 0 : 1,
+            () -> book == null ? Collections.<Book>emptyList() : Collections.singletonList(book));
+      case AUTHOR:
+        return plan(byAuthor, query.getValue());
+      case GENRE:
+        return plan(byGenre, query.getValue());
+      case ISSUED_TO:
+        return plan(byIssuedTo, query.getValue());
+      case ISSUED:
+        return new Plan(issued.size(), issued::values);
+      case DUE_BETWEEN:
+        return new Plan(dueDates.estimateBetween(query.getFrom(), query.getTo()),
+            () -> dueDates.dueBetween(query.getFrom(), query.getTo()));
+      case TITLE:
+      case KEYWORD:
+        int estimate = substrings.estimate(query.getValue(), query.getLowerValue());
+        return estimate < 0 ? null
+            : new Plan(estimate, () -> substrings.candidates(query.getValue(), query.getLowerValue()));
+      case AND:
+        Plan best = null;
+        for (BookQuery operand : query.getOperands()) {
+          Plan plan = plan(operand);
+          if (plan != null && (best == null || plan.estimate < best.estimate))
+            best = plan;
+        }
+        return best;
+      case OR:
+        List<Plan> plans = new ArrayList<>();
+        long total = 0;
+        for (BookQuery operand : query.getOperands()) {
+          Plan plan = plan(operand);
+          if (plan == null)
+            return null;
+          plans.add(plan);
+          total += plan.estimate;
+        }
+        return new Plan((int) Math.min(total, Integer.MAX_VALUE), () -> {
+          List<Book> union = new ArrayList<>();
+          for (Plan plan : plans)
+            union.addAll(plan.candidates.get());
+          return union;
+        });
+      default:
+        return null;
+    }
+  }
+
+  private static Plan plan(Map<String, Map<String, Book>> index, String key) {
+    Map<String, Book> entries = index.get(key);
+    return entries == null ? new Plan(0, Collections::emptyList) : new Plan(entries.size(), entries::values);
+  }
+
+  // A page of the catalog in sort order after cursor (null for the first
+  // page). Each order has its own index, so a page costs one descent plus
+  // the books on it at any catalog size.
+  public BookPage page(BookSort sort, String cursor, int limit) {
+    Book from = BookPage.probe(sort, cursor);
+    List<Book> books;
+    switch (sort) {
+      case TITLE:
+        books = titleOrder.after(from, limit + 1);
+        break;
+      case AUTHOR:
+        books = authorOrder.after(from, limit + 1);
+        break;
+      case ISBN:
+        books = isbnOrder.after(from, limit + 1);
+        break;
+      default:
+        books = dueDates.after(from, limit + 1);
+    }
+    return BookPage.of(sort, books, limit);
+  }
+
   public List<Book> getAvailableBooks() {
-    return books.stream()
-        .filter(book -> !book.isIssued())
-        .collect(Collectors.toList());
+    return scan.filter(book -> !book.isIssued());
   }
 
   public List<Book> getIssuedBooks() {
-    return books.stream()
-        .filter(Book::isIssued)
-        .collect(Collectors.toList());
+    return new ArrayList<>(issued.values());
+  }
+
+  // Visits every book in catalog order without copying the list
+  public void forEachBook(Consumer<Book> action) {
+    books.forEach(action);
   }
 
   public List<Book> getAllBooks() {
-    return new ArrayList<>(books);
+    return books.values();
   }
 
   public int getTotalBooks() {
@@ -57,10 +329,162 @@ public class Library implements Serializable {
   }
 
   public int getAvailableBooksCount() {
-    return getAvailableBooks().size();
+    return books.size() - issued.size();
   }
 
   public int getIssuedBooksCount() {
-    return getIssuedBooks().size();
+    return issued.size();
+  }
+
+  // Issued books due in [from, to), earliest first
+  public List<Book> getBooksDueBetween(long from, long to) {
+    return dueDates.dueBetween(from, to);
+  }
+
+  public int countBooksIssuedTo(String username) {
+    Map<String, Book> entries = byIssuedTo.get(username);
+    return entries == null ? 0 : entries.size();
+  }
+
+  public int countBooksByAuthor(String author) {
+    Map<String, Book> entries = byAuthor.get(author);
+    return entries == null ? 0 : entries.size();
+  }
+
+  public int countBooksByGenre(String genre) {
+    Map<String, Book> entries = byGenre.get(genre);
+    return entries == null ? 0 : entries.size();
+  }
+
+  // Every counter is kept up to date by the indexes, so this costs the same
+  // for any catalog size; only the per-genre map is copied
+  public CatalogStats getStats() {
+    Map<String, Integer> genres = new TreeMap<>(Comparator.nullsFirst(Comparator.<String>naturalOrder()));
+    for (Map.Entry<String, Map<String, Book>> entry : byGenre.entrySet())
+      genres.put(entry.getKey(), entry.getValue().size());
+    return new CatalogStats(books.size(), issued.size(), dueDates.overdueCount(System.currentTimeMillis()),
+        byAuthor.size(), genres);
+  }
+
+  private void indexSecondary(Book book) {
+    index(byAuthor, book.getAuthor(), book);
+    index(byGenre, book.getGenre(), book);
+    if (book.isIssued())
+      indexLoan(book);
+  }
+
+  private void indexLoan(Book book) {
+    issued.put(book.getIsbn(), book);
+    if (book.getIssuedTo() != null) {
+      index(byIssuedTo, book.getIssuedTo(), book);
+      indexedBorrower.put(book.getIsbn(), book.getIssuedTo());
+    }
+    if (book.getDueDate() != null)
+      dueDates.add(book, book.getDueDate().getTime());
+  }
+
+  private static void index(Map<String, Map<String, Book>> index, String key, Book book) {
+    index.computeIfAbsent(key, k -> new LinkedHashMap<>()).put(book.getIsbn(), book);
+  }
+
+  private static void unindex(Map<String, Map<String, Book>> index, String key, String isbn) {
+    Map<String, Book> entries = index.get(key);
+    if (entries == null)
+      return;
+    entries.remove(isbn);
+    if (entries.isEmpty())
+      index.remove(key);
+  }
+
+  private static List<Book> lookup(Map<String, Map<String, Book>> index, String key) {
+    Map<String, Book> entries = index.get(key);
+    return entries == null ? new ArrayList<>() : new ArrayList<>(entries.values());
+  }
+
+  // The ISBN table and the scan array keep catalog order and are filled
+  // first; the secondary, text, trigram, suggestion and ordered indexes only
+  // read the list, so each is built as its own parallel task
+  private void rebuildIndexes(List<Book> ordered) {
+    for (Book book : ordered)
+      books.put(book);
+    scan = new CatalogScan(ordered);
+
+    ForkJoinTask<Map<String, Map<String, Book>>> authors = ForkJoinPool.commonPool()
+        .submit(() -> group(ordered, Book::getAuthor));
+    ForkJoinTask<Map<String, Map<String, Book>>> genres = ForkJoinPool.commonPool()
+        .submit(() -> group(ordered, Book::getGenre));
+    ForkJoinTask<TextIndex> words = ForkJoinPool.commonPool().submit(() -> {
+      TextIndex index = new TextIndex();
+      for (Book book : ordered)
+        index.add(book);
+      return index;
+    });
+    ForkJoinTask<TrigramIndex> trigrams = ForkJoinPool.commonPool().submit(() -> {
+      TrigramIndex index = new TrigramIndex();
+      for (Book book : ordered)
+        index.add(book);
+      return index;
+    });
+    ForkJoinTask<SuggestionIndex> prefixes = ForkJoinPool.commonPool()
+        .submit(() -> SuggestionIndex.build(ordered));
+    ForkJoinTask<OrderedIndex> byTitle = ForkJoinPool.commonPool().submit(() -> sorted(ordered, BookSort.TITLE));
+    ForkJoinTask<OrderedIndex> byAuthorName = ForkJoinPool.commonPool().submit(() -> sorted(ordered, BookSort.AUTHOR));
+    ForkJoinTask<OrderedIndex> byIsbn = ForkJoinPool.commonPool().submit(() -> sorted(ordered, BookSort.ISBN));
+    for (Book book : ordered) {
+      if (book.isIssued())
+        indexLoan(book);
+    }
+    byAuthor = authors.join();
+    byGenre = genres.join();
+    text = words.join();
+    substrings = trigrams.join();
+    suggestions = prefixes.join();
+    titleOrder = byTitle.join();
+    authorOrder = byAuthorName.join();
+    isbnOrder = byIsbn.join();
+  }
+
+  private static OrderedIndex sorted(List<Book> books, BookSort sort) {
+    Book[] array = books.toArray(new Book[0]);
+    Arrays.sort(array, sort.comparator());
+    return OrderedIndex.build(sort.comparator(), array);
+  }
+
+  private static Map<String, Map<String, Book>> group(List<Book> books, Function<Book, String> key) {
+    Map<String, Map<String, Book>> index = new HashMap<>();
+    for (Book book : books)
+      index(index, key.apply(book), book);
+    return index;
+  }
+
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    ObjectOutputStream.PutField fields = out.putFields();
+    fields.put("books", books.values());
+    out.writeFields();
+  }
+
+  // Java-serialized libraries predate sequence numbers, so they are
+  // numbered in list order
+  @SuppressWarnings("unchecked")
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    ObjectInputStream.GetField fields = in.readFields();
+    List<Book> list = (List<Book>) fields.get("books", null);
+    Map<String, Book> unique = new LinkedHashMap<>();
+    if (list != null) {
+      for (Book book : list) {
+        unique.remove(book.getIsbn());
+        unique.put(book.getIsbn(), book);
+      }
+    }
+    List<Book> ordered = new ArrayList<>(unique.values());
+    for (Book book : ordered)
+      book.setSequence(nextSequence++);
+
+    books = new BookTable();
+    byIssuedTo = new HashMap<>();
+    indexedBorrower = new HashMap<>();
+    issued = new LinkedHashMap<>();
+    dueDates = new DueDateIndex();
+    rebuildIndexes(ordered);
   }
 }
\ No newline at end of file
@@ -0,0 +1,99 @@
+package models;
+
+import java.util.Arrays;
+
+// Open-addressed long -> int map, so neither side is boxed. Keys must not
+// be negative; get and remove return -1 for a missing key.
+class LongIntMap {
+  private static final long FREE = -1;
+
+  private long[] keys;
+  private int[] values;
+  private int size;
+
+  LongIntMap() {
+    keys = new long[16];
+    values = new int[16];
+    Arrays.fill(keys, FREE);
+  }
+
+  int size() {
+    return size;
+  }
+
+  int get(long key) {
+    int slot = slotOf(key);
+    return keys[slot] == FREE ? -1 : values[slot];
+  }
+
+  void put(long key, int value) {
+    int slot = slotOf(key);
+    if (keys[slot] == FREE) {
+      if ((size + 1) * 2 > keys.length) {
+        grow();
+        slot = slotOf(key);
+      }
+      keys[slot] = key;
+      size++;
+    }
+    values[slot] = value;
+  }
+
+  // Backward-shift deletion, so lookups never have to step over tombstones
+  int remove(long key) {
+    int slot = slotOf(key);
+    if (keys[slot] == FREE)
+      return -1;
+    int value = values[slot];
+    int mask = keys.length - 1;
+    int hole = slot;
+    for (int next = (hole + 1) & mask; keys[next] != FREE; next = (next + 1) & mask) {
+      int home = mix(keys[next]) & mask;
+      if (((next - home) & mask) >= ((next - hole) & mask)) {
+        keys[hole] = keys[next];
+        values[hole] = values[next];
+        hole = next;
+      }
+    }
+    keys[hole] = FREE;
+    size--;
+    return value;
+  }
+
+  void clear() {
+    Arrays.fill(keys, FREE);
+    size = 0;
+  }
+
+  // The slot holding key, or the free slot where it would go
+  private int slotOf(long key) {
+    int mask = keys.length - 1;
+    int slot = mix(key) & mask;
+    while (keys[slot] != FREE && keys[slot] != key)
+      slot = (slot + 1) & mask;
+    return slot;
+  }
+
+  private void grow() {
+    long[] oldKeys = keys;
+    int[] oldValues = values;
+    keys = new long[oldKeys.length * 2];
+    values = new int[oldKeys.length * 2];
+    Arrays.fill(keys, FREE);
+    int mask = keys.length - 1;
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] == FREE)
+        continue;
+      int slot = mix(oldKeys[i]) & mask;
+      while (keys[slot] != FREE)
+        slot = (slot + 1) & mask;
+      keys[slot] = oldKeys[i];
+      values[slot] = oldValues[i];
+    }
+  }
+
+  private static int mix(long key) {
+    long mixed = key * 0x9E3779B97F4A7C15L;
+    return (int) (mixed ^ (mixed >>> 32));
+  }
+}
@@ -0,0 +1,269 @@
+package models;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+// Books in one sort order as a B+tree, for keyset pagination. Leaves hold
+// up to 64 books and are chained, so a page is one descent to the first
+// book after the cursor and a walk along the leaves. At a few bytes per
+// book it costs far less than a TreeMap entry, which matters with one tree
+// per sort order. Shrinking leaves are not merged, only dropped once empty.
+// The order must only read fields that never change on a Book.
+class OrderedIndex {
+  private static final int CAPACITY = 64;
+
+  private abstract static class Node {
+    int count;
+  }
+
+  // One spare slot, so a full node can take the insert before it splits
+  private static final class Leaf extends Node {
+    final Book[] books = new Book[CAPACITY + 1];
+    Leaf prev;
+    Leaf next;
+  }
+
+  // keys[i] separates children[i] from children[i + 1]: the first book of
+  // children[i + 1] when it was split off
+  private static final class Branch extends Node {
+    final Book[] keys = new Book[CAPACITY];
+    final Node[] children = new Node[CAPACITY + 1];
+  }
+
+  private final Comparator<Book> order;
+  private Node root = new Leaf();
+  private int size;
+  // Separator for the node the last insert split off
+  private Book splitKey;
+
+  OrderedIndex(Comparator<Book> order) {
+    this.order = order;
+  }
+
+  // Bulk load from books already in order: full leaves, built bottom up
+  static OrderedIndex build(Comparator<Book> order, Book[] sorted) {
+    OrderedIndex index = new OrderedIndex(order);
+    if (sorted.length == 0)
+      return index;
+    List<Node> level = new ArrayList<>();
+    List<Book> firsts = new ArrayList<>();
+    Leaf prev = null;
+    for (int i = 0; i < sorted.length; i += CAPACITY) {
+      Leaf leaf = new Leaf();
+      leaf.count = Math.min(CAPACITY, sorted.length - i);
+      System.arraycopy(sorted, i, leaf.books, 0, leaf.count);
+      leaf.prev = prev;
+      if (prev != null)
+        prev.next = leaf;
+      prev = leaf;
+      level.add(leaf);
+      firsts.add(sorted[i]);
+    }
+    while (level.size() > 1) {
+      List<Node> parents = new ArrayList<>();
+      List<Book> parentFirsts = new ArrayList<>();
+      for (int i = 0; i < level.size(); i += CAPACITY) {
+        Branch branch = new Branch();
+        branch.count = Math.min(CAPACITY, level.size() - i);
+        for (int j = 0; j < branch.count; j++) {
+          branch.children[j] = level.get(i + j);
+          if (j > 0)
+            branch.keys[j - 1] = firsts.get(i + j);
+        }
+        parents.add(branch);
+        parentFirsts.add(firsts.get(i));
+      }
+      level = parents;
+      firsts = parentFirsts;
+    }
+    index.root = level.get(0);
+    index.size = sorted.length;
+    return index;
+  }
+
+  int size() {
+    return size;
+  }
+
+  void add(Book book) {
+    Node split = insert(root, book);
+    if (split != null) {
+      Branch top = new Branch();
+      top.children[0] = root;
+      top.children[1] = split;
+      top.keys[0] = splitKey;
+      top.count = 2;
+      root = top;
+    }
+    size++;
+  }
+
+  // Adds book in place of previous (null for a new book). The sort fields
+  // of an updated book are usually unchanged, and then its slot only gets
+  // the new instance; an issue or return hands back the same instance, which
+  // needs no descent at all.
+  void put(Book previous, Book book) {
+    if (previous == book) {
+      return;
+    } else if (previous == null) {
+      add(book);
+    } else if (order.compare(previous, book) == 0) {
+      Leaf leaf = leafFor(previous);
+      int pos = indexOf(leaf, previous);
+      if (pos >= 0)
+        leaf.books[pos] = book;
+    } else {
+      remove(previous);
+      add(book);
+    }
+  }
+
+  void remove(Book book) {
+    if (delete(root, book)) {
+      size--;
+      while (root instanceof Branch && root.count == 1)
+        root = ((Branch) root).children[0];
+    }
+  }
+
+  // Up to limit books that sort after the given one, or from the start
+  // when it is null
+  List<Book> after(Book from, int limit) {
+    List<Book> books = new ArrayList<>(Math.min(limit, size));
+    Leaf leaf = from == null ? leftmost() : leafFor(from);
+    int pos = from == null ? 0 : upperBound(leaf.books, leaf.count, from);
+    while (leaf != null && books.size() < limit) {
+      if (pos == leaf.count) {
+        leaf = leaf.next;
+        pos = 0;
+        continue;
+      }
+      books.add(leaf.books[pos++]);
+    }
+    return books;
+  }
+
+  private Leaf leftmost() {
+    Node node = root;
+    while (node instanceof Branch)
+      node = ((Branch) node).children[0];
+    return (Leaf) node;
+  }
+
+  private Leaf leafFor(Book book) {
+    Node node = root;
+    while (node instanceof Branch) {
+      Branch branch = (Branch) node;
+      node = branch.children[upperBound(branch.keys, branch.count - 1, book)];
+    }
+    return (Leaf) node;
+  }
+
+  // Returns the new right sibling if node had to split
+  private Node insert(Node node, Book book) {
+    if (node instanceof Leaf) {
+      Leaf leaf = (Leaf) node;
+      int pos = upperBound(leaf.books, leaf.count, book);
+      System.arraycopy(leaf.books, pos, leaf.books, pos + 1, leaf.count - pos);
+      leaf.books[pos] = book;
+      if (++leaf.count <= CAPACITY)
+        return null;
+      Leaf right = new Leaf();
+      int keep = leaf.count / 2;
+      right.count = leaf.count - keep;
+      System.arraycopy(leaf.books, keep, right.books, 0, right.count);
+      Arrays.fill(leaf.books, keep, leaf.count, null);
+      leaf.count = keep;
+      right.next = leaf.next;
+      right.prev = leaf;
+      if (leaf.next != null)
+        leaf.next.prev = right;
+      leaf.next = right;
+      splitKey = right.books[0];
+      return right;
+    }
+
+    Branch branch = (Branch) node;
+    int child = upperBound(branch.keys, branch.count - 1, book);
+    Node split = insert(branch.children[child], book);
+    if (split == null)
+      return null;
+    System.arraycopy(branch.keys, child, branch.keys, child + 1, branch.count - 1 - child);
+    System.arraycopy(branch.children, child + 1, branch.children, child + 2, branch.count - 1 - child);
+    branch.keys[child] = splitKey;
+    branch.children[child + 1] = split;
+    if (++branch.count <= CAPACITY)
+      return null;
+    Branch right = new Branch();
+    int keep = branch.count / 2;
+    right.count = branch.count - keep;
+    System.arraycopy(branch.children, keep, right.children, 0, right.count);
+    System.arraycopy(branch.keys, keep, right.keys, 0, right.count - 1);
+    splitKey = branch.keys[keep - 1];
+    Arrays.fill(branch.children, keep, branch.count, null);
+    Arrays.fill(branch.keys, keep - 1, branch.count - 1, null);
+    branch.count = keep;
+    return right;
+  }
+
+  // True if the book was found; an emptied node is unlinked by its parent
+  private boolean delete(Node node, Book book) {
+    if (node instanceof Leaf) {
+      Leaf leaf = (Leaf) node;
+      int pos = indexOf(leaf, book);
+      if (pos < 0)
+        return false;
+      System.arraycopy(leaf.books, pos + 1, leaf.books, pos, leaf.count - pos - 1);
+      leaf.books[--leaf.count] = null;
+      if (leaf.count == 0 && leaf != root) {
+        if (leaf.prev != null)
+          leaf.prev.next = leaf.next;
+        if (leaf.next != null)
+          leaf.next.prev = leaf.prev;
+      }
+      return true;
+    }
+
+    Branch branch = (Branch) node;
+    int child = upperBound(branch.keys, branch.count - 1, book);
+    Node target = branch.children[child];
+    if (!delete(target, book))
+      return false;
+    if (target.count == 0) {
+      if (branch.count == 1) {
+        branch.children[0] = null;
+        branch.count = 0;
+        return true;
+      }
+      // A neighbour of the emptied child takes over its key range
+      int key = child == 0 ? 0 : child - 1;
+      System.arraycopy(branch.keys, key + 1, branch.keys, key, branch.count - 2 - key);
+      branch.keys[branch.count - 2] = null;
+      System.arraycopy(branch.children, child + 1, branch.children, child, branch.count - 1 - child);
+      branch.children[branch.count - 1] = null;
+      branch.count--;
+    }
+    return true;
+  }
+
+  private int indexOf(Leaf leaf, Book book) {
+    int pos = upperBound(leaf.books, leaf.count, book) - 1;
+    return pos >= 0 && order.compare(leaf.books[pos], book) == 0 ? pos : -1;
+  }
+
+  // First position in books[0, count) that sorts after book
+  private int upperBound(Book[] books, int count, Book book) {
+    int low = 0;
+    int high = count;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (order.compare(books[mid], book) <= 0)
+        low = mid + 1;
+      else
+        high = mid;
+    }
+    return low;
+  }
+}
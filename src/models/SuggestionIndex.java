@@ -0,0 +1,190 @@
+package models;
+
+import java.util.*;
+
+// Type-ahead suggestions over titles and authors, weighted by how many books
+// carry them. Most keys sit in one sorted array that holds the books' own
+// String objects, so no text is copied; a prefix is a contiguous range of it,
+// and a max tree over the weights yields the heaviest keys of a range without
+// visiting the rest. Changes since the last merge go to a small sorted
+// overlay, folded into the array once it grows to half its size. Keys
+// compare case-insensitively.
+class SuggestionIndex {
+  private static final Comparator<String> ORDER = String.CASE_INSENSITIVE_ORDER;
+
+  private String[] keys = new String[0];
+  // Leaf i is at leaves + i and holds the weight of keys[i]; every inner
+  // node holds the larger of its two children
+  private int[] tree = new int[2];
+  private int leaves = 1;
+  // Current weight of every key changed since the last merge; 0 once gone
+  private TreeMap<String, Integer> overlay = new TreeMap<>(ORDER);
+
+  static SuggestionIndex build(List<Book> books) {
+    String[] all = new String[books.size() * 2];
+    int n = 0;
+    for (Book book : books) {
+      if (isKey(book.getTitle()))
+        all[n++] = book.getTitle();
+      if (isKey(book.getAuthor()))
+        all[n++] = book.getAuthor();
+    }
+    Arrays.sort(all, 0, n, ORDER);
+
+    String[] keys = new String[n];
+    int[] weights = new int[n];
+    int distinct = 0;
+    for (int i = 0; i < n; i++) {
+      if (distinct > 0 && ORDER.compare(keys[distinct - 1], all[i]) == 0) {
+        weights[distinct - 1]++;
+      } else {
+        keys[distinct] = all[i];
+        weights[distinct++] = 1;
+      }
+    }
+    SuggestionIndex index = new SuggestionIndex();
+    index.load(Arrays.copyOf(keys, distinct), weights);
+    return index;
+  }
+
+  void add(String key) {
+    adjust(key, 1);
+  }
+
+  void remove(String key) {
+    adjust(key, -1);
+  }
+
+  // Up to limit keys starting with prefix, heaviest first, ties in key order
+  List<String> suggest(String prefix, int limit) {
+    List<String> suggestions = new ArrayList<>();
+    if (prefix.isEmpty() || limit <= 0)
+      return suggestions;
+
+    List<Map.Entry<String, Integer>> found = new ArrayList<>();
+    int from = lowerBound(prefix);
+    int to = from;
+    for (int step = Integer.highestOneBit(Math.max(1, keys.length)); step > 0; step >>= 1) {
+      if (to + step <= keys.length && startsWith(keys[to + step - 1], prefix))
+        to += step;
+    }
+
+    // Heaviest nodes first, then leftmost, so keys come out in weight and
+    // then key order; keys the overlay has changed are taken from it
+    PriorityQueue<Integer> pending = new PriorityQueue<>((a, b) -> tree[a] == tree[b]
+        ? Integer.compare(firstLeaf(a), firstLeaf(b)) : Integer.compare(tree[b], tree[a]));
+    for (int l = from + leaves, r = to + leaves; l < r; l >>= 1, r >>= 1) {
+      if ((l & 1) == 1)
+        pending.add(l++);
+      if ((r & 1) == 1)
+        pending.add(--r);
+    }
+    int taken = 0;
+    while (!pending.isEmpty() && taken < limit) {
+      int node = pending.poll();
+      if (tree[node] == 0)
+        break;
+      if (node < leaves) {
+        pending.add(2 * node);
+        pending.add(2 * node + 1);
+      } else if (!overlay.containsKey(keys[node - leaves])) {
+        found.add(new AbstractMap.SimpleEntry<>(keys[node - leaves], tree[node]));
+        taken++;
+      }
+    }
+    for (Map.Entry<String, Integer> entry : overlay.tailMap(prefix, true).entrySet()) {
+      if (!startsWith(entry.getKey(), prefix))
+        break;
+      if (entry.getValue() > 0)
+        found.add(entry);
+    }
+
+    found.sort((a, b) -> a.getValue().equals(b.getValue())
+        ? ORDER.compare(a.getKey(), b.getKey()) : Integer.compare(b.getValue(), a.getValue()));
+    for (int i = 0; i < found.size() && i < limit; i++)
+      suggestions.add(found.get(i).getKey());
+    return suggestions;
+  }
+
+  private int firstLeaf(int node) {
+    while (node < leaves)
+      node <<= 1;
+    return node;
+  }
+
+  private void adjust(String key, int delta) {
+    if (!isKey(key))
+      return;
+    Integer current = overlay.get(key);
+    int weight = current != null ? current : weightOf(key);
+    overlay.put(key, Math.max(0, weight + delta));
+    if (overlay.size() > Math.max(1024, keys.length / 2))
+      merge();
+  }
+
+  private int weightOf(String key) {
+    int i = lowerBound(key);
+    return i < keys.length && ORDER.compare(keys[i], key) == 0 ? tree[leaves + i] : 0;
+  }
+
+  // Both sides are already sorted, so this is one linear pass
+  private void merge() {
+    String[] merged = new String[keys.length + overlay.size()];
+    int[] weights = new int[merged.length];
+    int n = 0;
+    int i = 0;
+    for (Map.Entry<String, Integer> entry : overlay.entrySet()) {
+      while (i < keys.length && ORDER.compare(keys[i], entry.getKey()) < 0) {
+        merged[n] = keys[i];
+        weights[n++] = tree[leaves + i++];
+      }
+      if (i < keys.length && ORDER.compare(keys[i], entry.getKey()) == 0)
+        i++;
+      if (entry.getValue() > 0) {
+        merged[n] = entry.getKey();
+        weights[n++] = entry.getValue();
+      }
+    }
+    while (i < keys.length) {
+      merged[n] = keys[i];
+      weights[n++] = tree[leaves + i++];
+    }
+    overlay = new TreeMap<>(ORDER);
+    load(Arrays.copyOf(merged, n), weights);
+  }
+
+  private void load(String[] sortedKeys, int[] weights) {
+    int size = 1;
+    while (size < sortedKeys.length)
+      size <<= 1;
+    int[] nodes = new int[2 * size];
+    System.arraycopy(weights, 0, nodes, size, sortedKeys.length);
+    for (int node = size - 1; node > 0; node--)
+      nodes[node] = Math.max(nodes[2 * node], nodes[2 * node + 1]);
+    keys = sortedKeys;
+    leaves = size;
+    tree = nodes;
+  }
+
+  // First index whose key is not before prefix
+  private int lowerBound(String prefix) {
+    int low = 0;
+    int high = keys.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (ORDER.compare(keys[mid], prefix) < 0)
+        low = mid + 1;
+      else
+        high = mid;
+    }
+    return low;
+  }
+
+  private static boolean startsWith(String key, String prefix) {
+    return key.regionMatches(true, 0, prefix, 0, prefix.length());
+  }
+
+  private static boolean isKey(String text) {
+    return text != null && !text.isEmpty();
+  }
+}
@@ -0,0 +1,399 @@
+package models;
+
+import java.util.*;
+
+// Inverted index over title, author and genre words for ranked search.
+// Books get increasing doc ids, so every posting list stays sorted by
+// appending. Removed docs are only marked dead and skipped at query time;
+// once they make up half the ids, the whole index is renumbered.
+class TextIndex {
+  private static final float K1 = 1.2f;
+  private static final float B = 0.75f;
+  // Prefix terms score a little below exact ones and expand to at most this
+  // many dictionary terms, so a one-letter query stays cheap
+  private static final float PREFIX_WEIGHT = 0.8f;
+  private static final int MAX_EXPANSIONS = 64;
+  // Fuzzy terms lose this much weight per edit
+  private static final float EDIT_WEIGHT = 0.5f;
+
+  private static class Postings {
+    int[] docs = new int[1];
+    int[] freqs = new int[1];
+    int size;
+
+    void add(int doc, int freq) {
+      if (size == docs.length) {
+        docs = Arrays.copyOf(docs, size * 2);
+        freqs = Arrays.copyOf(freqs, size * 2);
+      }
+      docs[size] = doc;
+      freqs[size] = freq;
+      size++;
+    }
+
+    // Term frequency of doc, or 0 when it is not in the list
+    int freq(int doc) {
+      int i = Arrays.binarySearch(docs, 0, size, doc);
+      return i >= 0 ? freqs[i] : 0;
+    }
+  }
+
+  // Every token is looked up in the hash map; the sorted map only takes new
+  // words and serves prefix lookups
+  private final Map<String, Postings> terms = new HashMap<>();
+  private final TreeMap<String, Postings> dictionary = new TreeMap<>();
+  // Packed copy of the dictionary for fuzzy lookups, dropped whenever a new
+  // word arrives and rebuilt by the next fuzzy query
+  private String[] sortedWords;
+  private char[] wordChars;
+  private int[] wordStarts;
+  private int[] sharedPrefix;
+  private int longestWord;
+  private final IsbnIndex docByIsbn = new IsbnIndex();
+  private Book[] docs = new Book[16];
+  private int[] docLengths = new int[16];
+  private int nextDoc;
+  // Per-query score scratch space, indexed by doc and zeroed after each query
+  private float[] scores = new float[0];
+  private int liveDocs;
+  private long totalLength;
+
+  // Upsert; a book whose text is unchanged (an issue or return) keeps its doc
+  void add(Book book) {
+    int existing = docByIsbn.get(book.getIsbn());
+    if (existing >= 0) {
+      Book indexed = docs[existing];
+      if (indexed.getTitle().equals(book.getTitle()) && indexed.getAuthor().equals(book.getAuthor())
+          && Objects.equals(indexed.getGenre(), book.getGenre())) {
+        docs[existing] = book;
+        return;
+      }
+      remove(book.getIsbn());
+    }
+
+    int doc = nextDoc++;
+    if (doc == docs.length) {
+      docs = Arrays.copyOf(docs, doc * 2);
+      docLengths = Arrays.copyOf(docLengths, doc * 2);
+    }
+    List<String> tokens = new ArrayList<>(8);
+    tokenize(book.getTitle(), tokens);
+    tokenize(book.getAuthor(), tokens);
+    tokenize(book.getGenre(), tokens);
+    int length = tokens.size();
+    // Books have a handful of words, so counting by rescanning is cheapest
+    for (int i = 0; i < length; i++) {
+      String token = tokens.get(i);
+      if (tokens.subList(0, i).contains(token))
+        continue;
+      int freq = 1;
+      for (int j = i + 1; j < length; j++) {
+        if (tokens.get(j).equals(token))
+          freq++;
+      }
+      Postings postings = terms.get(token);
+      if (postings == null) {
+        postings = new Postings();
+        terms.put(token, postings);
+        dictionary.put(token, postings);
+        sortedWords = null;
+      }
+      postings.add(doc, freq);
+    }
+    docs[doc] = book;
+    docLengths[doc] = length;
+    docByIsbn.put(book.getIsbn(), doc);
+    liveDocs++;
+    totalLength += length;
+  }
+
+  void remove(String isbn) {
+    int doc = docByIsbn.remove(isbn);
+    if (doc < 0)
+      return;
+    docs[doc] = null;
+    liveDocs--;
+    totalLength -= docLengths[doc];
+    if (nextDoc > 1024 && liveDocs < nextDoc / 2)
+      renumber();
+  }
+
+  // Every query term must match a token exactly or as a prefix; results are
+  // ordered by BM25 score, best first, ties in indexing order
+  List<Book> search(String query, int limit) {
+    List<String> queryTerms = new ArrayList<>(new LinkedHashSet<>(tokenize(query, new ArrayList<>())));
+    if (queryTerms.isEmpty() || liveDocs == 0)
+      return new ArrayList<>();
+
+    List<List<Postings>> groups = new ArrayList<>();
+    List<float[]> weights = new ArrayList<>();
+    for (String term : queryTerms) {
+      List<Postings> group = new ArrayList<>();
+      List<Float> groupWeights = new ArrayList<>();
+      for (Map.Entry<String, Postings> entry : dictionary.subMap(term, true, term + Character.MAX_VALUE, true)
+          .entrySet()) {
+        group.add(entry.getValue());
+        groupWeights.add(entry.getKey().length() == term.length() ? 1f : PREFIX_WEIGHT);
+        if (group.size() == MAX_EXPANSIONS)
+          break;
+      }
+      if (group.isEmpty())
+        return new ArrayList<>();
+      groups.add(group);
+      weights.add(toArray(groupWeights));
+    }
+    return rank(groups, weights, limit);
+  }
+
+  // Like search, but each query term matches the dictionary words within
+  // maxEdits(term) edits instead of by prefix; a word scores less the more
+  // edits it is away from the term
+  List<Book> searchFuzzy(String query, int limit) {
+    List<String> queryTerms = new ArrayList<>(new LinkedHashSet<>(tokenize(query, new ArrayList<>())));
+    if (queryTerms.isEmpty() || liveDocs == 0)
+      return new ArrayList<>();
+
+    List<List<Postings>> groups = new ArrayList<>();
+    List<float[]> weights = new ArrayList<>();
+    for (String term : queryTerms) {
+      List<Postings> group = new ArrayList<>();
+      List<Float> groupWeights = new ArrayList<>();
+      List<List<String>> byEdits = similarTerms(term, maxEdits(term));
+      for (int edits = 0; edits < byEdits.size() && group.size() < MAX_EXPANSIONS; edits++) {
+        for (String word : byEdits.get(edits)) {
+          group.add(terms.get(word));
+          groupWeights.add((float) Math.pow(EDIT_WEIGHT, edits));
+          if (group.size() == MAX_EXPANSIONS)
+            break;
+        }
+      }
+      if (group.isEmpty())
+        return new ArrayList<>();
+      groups.add(group);
+      weights.add(toArray(groupWeights));
+    }
+    return rank(groups, weights, limit);
+  }
+
+  // Short words get fewer edits, otherwise nearly every short word matches
+  private static int maxEdits(String term) {
+    return term.length() <= 2 ? 0 : term.length() <= 5 ? 1 : 2;
+  }
+
+  // Dictionary words within maxEdits Levenshtein edits of term, grouped by
+  // distance. Walks the sorted words keeping one edit-distance row per prefix
+  // character, so a word reuses the rows of the prefix it shares with the
+  // word before it, and once a prefix is more than maxEdits away every word
+  // under it is skipped.
+  private List<List<String>> similarTerms(String term, int maxEdits) {
+    List<List<String>> byEdits = new ArrayList<>();
+    for (int edits = 0; edits <= maxEdits; edits++)
+      byEdits.add(new ArrayList<>());
+    if (sortedWords == null)
+      packDictionary();
+    int m = term.length();
+    int[][] rows = new int[longestWord + 1][m + 1];
+    for (int j = 0; j <= m; j++)
+      rows[0][j] = j;
+
+    int validRows = 0;
+    int i = 0;
+    while (i < sortedWords.length) {
+      int start = wordStarts[i];
+      int length = wordStarts[i + 1] - start;
+      int depth = Math.min(sharedPrefix[i], validRows);
+      boolean pruned = false;
+      while (depth < length) {
+        int[] above = rows[depth];
+        int[] row = rows[depth + 1];
+        char c = wordChars[start + depth];
+        row[0] = depth + 1;
+        int rowMin = row[0];
+        for (int j = 1; j <= m; j++) {
+          int substitute = above[j - 1] + (term.charAt(j - 1) == c ? 0 : 1);
+          row[j] = Math.min(substitute, Math.min(above[j], row[j - 1]) + 1);
+          rowMin = Math.min(rowMin, row[j]);
+        }
+        depth++;
+        if (rowMin > maxEdits) {
+          pruned = true;
+          break;
+        }
+      }
+      validRows = depth;
+      if (pruned) {
+        // Skip the words after this one that share the failed prefix
+        i++;
+        while (i < sortedWords.length && sharedPrefix[i] >= depth)
+          i++;
+      } else {
+        if (rows[depth][m] <= maxEdits)
+          byEdits.get(rows[depth][m]).add(sortedWords[i]);
+        i++;
+      }
+    }
+    return byEdits;
+  }
+
+  // Copies the dictionary into one char array in sorted order, with each
+  // word's common prefix length with the word before it
+  private void packDictionary() {
+    String[] words = dictionary.keySet().toArray(new String[0]);
+    int total = 0;
+    for (String word : words)
+      total += word.length();
+    char[] chars = new char[total];
+    int[] starts = new int[words.length + 1];
+    int[] shared = new int[words.length];
+    int longest = 0;
+    for (int w = 0; w < words.length; w++) {
+      String word = words[w];
+      word.getChars(0, word.length(), chars, starts[w]);
+      starts[w + 1] = starts[w] + word.length();
+      longest = Math.max(longest, word.length());
+      if (w > 0) {
+        String before = words[w - 1];
+        int limit = Math.min(before.length(), word.length());
+        int common = 0;
+        while (common < limit && before.charAt(common) == word.charAt(common))
+          common++;
+        shared[w] = common;
+      }
+    }
+    wordChars = chars;
+    wordStarts = starts;
+    sharedPrefix = shared;
+    longestWord = longest;
+    sortedWords = words;
+  }
+
+  private static float[] toArray(List<Float> values) {
+    float[] array = new float[values.size()];
+    for (int i = 0; i < array.length; i++)
+      array[i] = values.get(i);
+    return array;
+  }
+
+  // Every group must match; within a group the best-scoring term counts
+  private List<Book> rank(List<List<Postings>> groups, List<float[]> weights, int limit) {
+    // Candidates come from the group with the fewest postings; the others
+    // are probed by binary search
+    int driver = 0;
+    for (int g = 1; g < groups.size(); g++) {
+      if (postingCount(groups.get(g)) < postingCount(groups.get(driver)))
+        driver = g;
+    }
+    float avgLength = (float) totalLength / liveDocs;
+    if (scores.length < nextDoc)
+      scores = new float[docs.length];
+    float[] scores = this.scores;
+    int[] candidates = new int[Math.min(postingCount(groups.get(driver)), nextDoc)];
+    int candidateCount = 0;
+    List<Postings> driverGroup = groups.get(driver);
+    for (int p = 0; p < driverGroup.size(); p++) {
+      Postings postings = driverGroup.get(p);
+      float idf = idf(postings) * weights.get(driver)[p];
+      for (int i = 0; i < postings.size; i++) {
+        int doc = postings.docs[i];
+        if (docs[doc] == null)
+          continue;
+        float score = idf * tfNorm(postings.freqs[i], docLengths[doc], avgLength);
+        if (scores[doc] == 0)
+          candidates[candidateCount++] = doc;
+        scores[doc] = Math.max(scores[doc], score);
+      }
+    }
+
+    // Min-heap of the best docs so far; on equal scores the lower doc id wins
+    PriorityQueue<Integer> top = new PriorityQueue<>(
+        (a, b) -> scores[a] == scores[b] ? b - a : Float.compare(scores[a], scores[b]));
+    for (int c = 0; c < candidateCount; c++) {
+      int doc = candidates[c];
+      float score = scores[doc];
+      for (int g = 0; g < groups.size() && score > 0; g++) {
+        if (g == driver)
+          continue;
+        float best = 0;
+        List<Postings> group = groups.get(g);
+        for (int p = 0; p < group.size(); p++) {
+          int freq = group.get(p).freq(doc);
+          if (freq > 0)
+            best = Math.max(best, idf(group.get(p)) * weights.get(g)[p] * tfNorm(freq, docLengths[doc], avgLength));
+        }
+        score = best > 0 ? score + best : 0;
+      }
+      scores[doc] = score;
+      if (score <= 0)
+        continue;
+      if (top.size() < limit) {
+        top.add(doc);
+      } else if (top.comparator().compare(doc, top.peek()) > 0) {
+        top.poll();
+        top.add(doc);
+      }
+    }
+
+    Book[] ranked = new Book[top.size()];
+    for (int i = ranked.length - 1; i >= 0; i--)
+      ranked[i] = docs[top.poll()];
+    for (int c = 0; c < candidateCount; c++)
+      scores[candidates[c]] = 0;
+    return new ArrayList<>(Arrays.asList(ranked));
+  }
+
+  private static int postingCount(List<Postings> group) {
+    int count = 0;
+    for (Postings postings : group)
+      count += postings.size;
+    return count;
+  }
+
+  // Dead docs still count towards df until the next renumber; close enough
+  // for ranking, but df is capped at the live docs so the idf stays positive
+  // and a re-indexed book is not scored out of its own words
+  private float idf(Postings postings) {
+    int df = Math.min(postings.size, liveDocs);
+    return (float) Math.log(1 + (liveDocs - df + 0.5) / (df + 0.5));
+  }
+
+  private static float tfNorm(int freq, int length, float avgLength) {
+    return freq * (K1 + 1) / (freq + K1 * (1 - B + B * length / avgLength));
+  }
+
+  private void renumber() {
+    Book[] live = new Book[liveDocs];
+    int n = 0;
+    for (int doc = 0; doc < nextDoc; doc++) {
+      if (docs[doc] != null)
+        live[n++] = docs[doc];
+    }
+    terms.clear();
+    dictionary.clear();
+    sortedWords = null;
+    docByIsbn.clear();
+    docs = new Book[Math.max(16, live.length)];
+    docLengths = new int[docs.length];
+    nextDoc = 0;
+    liveDocs = 0;
+    totalLength = 0;
+    for (Book book : live)
+      add(book);
+  }
+
+  // Appends the lower-cased runs of letters and digits in text
+  static List<String> tokenize(String text, List<String> tokens) {
+    if (text == null)
+      return tokens;
+    int start = -1;
+    for (int i = 0; i <= text.length(); i++) {
+      boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+      if (wordChar && start < 0) {
+        start = i;
+      } else if (!wordChar && start >= 0) {
+        tokens.add(text.substring(start, i).toLowerCase());
+        start = -1;
+      }
+    }
+    return tokens;
+  }
+}
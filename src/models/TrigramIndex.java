@@ -0,0 +1,205 @@
+package models;
+
+import java.util.*;
+
+// Trigram index behind Library.searchBooks. It only narrows the candidates:
+// every book whose lower-cased title or author, or whose ISBN, contains all
+// trigrams of the keyword, and the caller still runs the exact contains
+// check, so results match a full scan. Title/author trigrams and ISBN
+// trigrams are kept apart because the ISBN check is case-sensitive.
+class TrigramIndex {
+  private static final long ISBN_FIELD = 1L << 48;
+
+  private static class Postings {
+    int[] docs = new int[2];
+    int size;
+
+    void add(int doc) {
+      if (size == docs.length)
+        docs = Arrays.copyOf(docs, size * 2);
+      docs[size++] = doc;
+    }
+
+    boolean contains(int doc) {
+      return Arrays.binarySearch(docs, 0, size, doc) >= 0;
+    }
+  }
+
+  // Open-addressed trigram -> postings table, so packed keys are never
+  // boxed; 0 marks a free slot, which leaves only the all-NUL trigram
+  // unindexed
+  private long[] keys = new long[1024];
+  private Postings[] lists = new Postings[1024];
+  private int trigramCount;
+  private final IsbnIndex docByIsbn = new IsbnIndex();
+  private Book[] docs = new Book[16];
+  private int nextDoc;
+  private int liveDocs;
+
+  // Upsert; a book whose text is unchanged (an issue or return) keeps its doc
+  void add(Book book) {
+    int existing = docByIsbn.get(book.getIsbn());
+    if (existing >= 0) {
+      Book indexed = docs[existing];
+      if (indexed.getTitle().equals(book.getTitle()) && indexed.getAuthor().equals(book.getAuthor())) {
+        docs[existing] = book;
+        return;
+      }
+      remove(book.getIsbn());
+    }
+
+    int doc = nextDoc++;
+    if (doc == docs.length)
+      docs = Arrays.copyOf(docs, doc * 2);
+    String title = book.getTitle().toLowerCase();
+    String author = book.getAuthor().toLowerCase();
+    long[] keys = new long[title.length() + author.length() + book.getIsbn().length()];
+    int count = addTrigrams(title, 0, keys, 0);
+    count = addTrigrams(author, 0, keys, count);
+    count = addTrigrams(book.getIsbn(), ISBN_FIELD, keys, count);
+    Arrays.sort(keys, 0, count);
+    for (int i = 0; i < count; i++) {
+      if (i > 0 && keys[i] == keys[i - 1])
+        continue;
+      postingsFor(keys[i], true).add(doc);
+    }
+    docs[doc] = book;
+    docByIsbn.put(book.getIsbn(), doc);
+    liveDocs++;
+  }
+
+  void remove(String isbn) {
+    int doc = docByIsbn.remove(isbn);
+    if (doc < 0)
+      return;
+    docs[doc] = null;
+    liveDocs--;
+    if (nextDoc > 1024 && liveDocs < nextDoc / 2)
+      renumber();
+  }
+
+  // Null when the keyword is shorter than a trigram and cannot narrow the
+  // search; the caller then scans the whole catalog
+  List<Book> candidates(String keyword, String lowerKeyword) {
+    if (keyword.length() < 3 || lowerKeyword.length() < 3)
+      return null;
+    Set<Integer> matches = new HashSet<>();
+    collect(lowerKeyword, 0, matches);
+    collect(keyword, ISBN_FIELD, matches);
+    List<Book> books = new ArrayList<>(matches.size());
+    for (int doc : matches)
+      books.add(docs[doc]);
+    return books;
+  }
+
+  // Upper bound on the size of candidates() from the rarest trigram of each
+  // field, without intersecting anything; -1 when candidates() would be null
+  int estimate(String keyword, String lowerKeyword) {
+    if (keyword.length() < 3 || lowerKeyword.length() < 3)
+      return -1;
+    return rarest(lowerKeyword, 0) + rarest(keyword, ISBN_FIELD);
+  }
+
+  private int rarest(String text, long field) {
+    long[] keys = new long[text.length()];
+    int count = addTrigrams(text, field, keys, 0);
+    int min = Integer.MAX_VALUE;
+    for (int i = 0; i < count; i++) {
+      Postings list = postingsFor(keys[i], false);
+      if (list == null)
+        return 0;
+      min = Math.min(min, list.size);
+    }
+    return min;
+  }
+
+  // Adds the live docs that have every trigram of text in the given field;
+  // the rarest trigram drives and the rest are probed by binary search
+  private void collect(String text, long field, Set<Integer> matches) {
+    long[] keys = new long[text.length()];
+    int count = addTrigrams(text, field, keys, 0);
+    List<Postings> lists = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      Postings list = postingsFor(keys[i], false);
+      if (list == null)
+        return;
+      lists.add(list);
+    }
+    lists.sort(Comparator.comparingInt(list -> list.size));
+
+    Postings driver = lists.get(0);
+    for (int i = 0; i < driver.size; i++) {
+      int doc = driver.docs[i];
+      if (docs[doc] == null)
+        continue;
+      boolean all = true;
+      for (int l = 1; l < lists.size() && all; l++)
+        all = lists.get(l).contains(doc);
+      if (all)
+        matches.add(doc);
+    }
+  }
+
+  private Postings postingsFor(long key, boolean create) {
+    if (key == 0)
+      return create ? new Postings() : null;
+    int mask = keys.length - 1;
+    int slot = Long.hashCode(key * 0x9E3779B97F4A7C15L) & mask;
+    while (keys[slot] != 0) {
+      if (keys[slot] == key)
+        return lists[slot];
+      slot = (slot + 1) & mask;
+    }
+    if (!create)
+      return null;
+    if ((trigramCount + 1) * 2 > keys.length) {
+      grow();
+      return postingsFor(key, true);
+    }
+    keys[slot] = key;
+    lists[slot] = new Postings();
+    trigramCount++;
+    return lists[slot];
+  }
+
+  private void grow() {
+    long[] oldKeys = keys;
+    Postings[] oldLists = lists;
+    keys = new long[oldKeys.length * 2];
+    lists = new Postings[oldKeys.length * 2];
+    int mask = keys.length - 1;
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] == 0)
+        continue;
+      int slot = Long.hashCode(oldKeys[i] * 0x9E3779B97F4A7C15L) & mask;
+      while (keys[slot] != 0)
+        slot = (slot + 1) & mask;
+      keys[slot] = oldKeys[i];
+      lists[slot] = oldLists[i];
+    }
+  }
+
+  private static int addTrigrams(String text, long field, long[] keys, int count) {
+    for (int i = 0; i + 3 <= text.length(); i++)
+      keys[count++] = field | ((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2);
+    return count;
+  }
+
+  private void renumber() {
+    Book[] live = new Book[liveDocs];
+    int n = 0;
+    for (int doc = 0; doc < nextDoc; doc++) {
+      if (docs[doc] != null)
+        live[n++] = docs[doc];
+    }
+    keys = new long[1024];
+    lists = new Postings[1024];
+    trigramCount = 0;
+    docByIsbn.clear();
+    docs = new Book[Math.max(16, live.length)];
+    nextDoc = 0;
+    liveDocs = 0;
+    for (Book book : live)
+      add(book);
+  }
+}
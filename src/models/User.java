@@ -3,6 +3,8 @@ package models;
 import java.io.Serializable;
 
 public class User implements Serializable {
+  private static final long serialVersionUID = -2439500935586335601L;
+
   private String username;
   private String password;
   private String email;
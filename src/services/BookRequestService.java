@@ -1,37 +1,45 @@
 package services;
 
+import dao.RequestDAO;
+import models.Book;
 import models.BookRequest;
 import models.RequestStatus;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
 
 public class BookRequestService {
-    private List<BookRequest> requests;
+    private RequestDAO requestDAO;
     private LibraryService libraryService;
 
     public BookRequestService(LibraryService libraryService) {
-        this.requests = new ArrayList<>();
+        this(libraryService, false);
+    }
+
+    public BookRequestService(LibraryService libraryService, boolean readOnly) {
+        this.requestDAO = new RequestDAO(readOnly);
         this.libraryService = libraryService;
     }
 
     public BookRequest requestBook(String isbn, String username) {
         // Check if book exists and is available
-        if (libraryService.findBookByIsbn(isbn) == null) {
+        Book book = libraryService.findBookByIsbn(isbn);
+        if (book == null) {
             return null;
         }
+        isbn = book.getIsbn();
         
         // Check if user already has a pending request for this book
-        boolean hasPendingRequest = requests.stream()
-            .anyMatch(req -> req.getIsbn().equals(isbn) && 
-                           req.getUsername().equals(username) && 
-                           req.getStatus() == RequestStatus.PENDING);
-        
-        if (hasPendingRequest) {
+        if (requestDAO.hasPendingRequest(isbn, username)) {
+            return null;
+        }
+
+        // Members at their loan limit could not be issued the book anyway
+        if (!libraryService.canBorrow(username)) {
             return null;
         }
 
         BookRequest request = new BookRequest(isbn, username);
-        requests.add(request);
+        requestDAO.addRequest(request);
         return request;
     }
 
@@ -44,6 +52,7 @@ public class BookRequestService {
             
             if (issued) {
                 request.setStatus(RequestStatus.APPROVED);
+                requestDAO.updateRequest(request);
                 return true;
             }
         }
@@ -54,27 +63,25 @@ public class BookRequestService {
         BookRequest request = findRequestById(requestId);
         if (request != null && request.getStatus() == RequestStatus.PENDING) {
             request.setStatus(RequestStatus.REJECTED);
+            requestDAO.updateRequest(request);
             return true;
         }
         return false;
     }
 
     public List<BookRequest> getPendingRequests() {
-        return requests.stream()
-            .filter(req -> req.getStatus() == RequestStatus.PENDING)
-            .collect(Collectors.toList());
+        return requestDAO.getPendingRequests();
     }
 
     public List<BookRequest> getUserRequests(String username) {
-        return requests.stream()
-            .filter(req -> req.getUsername().equals(username))
-            .collect(Collectors.toList());
+        return requestDAO.getUserRequests(username);
+    }
+
+    public void forEachRequest(Consumer<BookRequest> action) {
+        requestDAO.forEachRequest(action);
     }
 
     private BookRequest findRequestById(String requestId) {
-        return requests.stream()
-            .filter(req -> req.getRequestId().equals(requestId))
-            .findFirst()
-            .orElse(null);
+        return requestDAO.findRequestById(requestId);
     }
 }
\ No newline at end of file
@@ -0,0 +1,259 @@
+package services;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Date;
+
+// Writes the catalog, current loans and requests as CSV or JSON Lines. Rows
+// are streamed straight out of the stores and encoded into one reusable
+// direct buffer that is drained to a FileChannel, so memory use does not
+// grow with the catalog. Each file is written beside its target and moved
+// into place once complete, so readers never see a partial export.
+public class CatalogExporter {
+  public enum Format {
+    CSV(".csv"), JSONL(".jsonl");
+
+    private final String extension;
+
+    Format(String extension) {
+      this.extension = extension;
+    }
+  }
+
+  private static final int BUFFER_SIZE = 1 << 18;
+  private static final String[] BOOK_COLUMNS = { "isbn", "title", "author", "genre", "issued",
+      "issued_to", "issue_date", "due_date" };
+  private static final String[] LOAN_COLUMNS = { "isbn", "title", "issued_to", "issue_date", "due_date" };
+  private static final String[] REQUEST_COLUMNS = { "request_id", "isbn", "username", "request_date",
+      "status" };
+
+  private final LibraryService libraryService;
+  private final BookRequestService requestService;
+  private final Format format;
+  private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+  private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+      .onMalformedInput(CodingErrorAction.REPLACE)
+      .onUnmappableCharacter(CodingErrorAction.REPLACE);
+  private final StringBuilder line = new StringBuilder(256);
+  private FileChannel channel;
+
+  public CatalogExporter(LibraryService libraryService, BookRequestService requestService, Format format) {
+    this.libraryService = libraryService;
+    this.requestService = requestService;
+    this.format = format;
+  }
+
+  // Writes books, loans and requests files into the given directory
+  public void exportAll(Path directory) throws IOException {
+    Files.createDirectories(directory);
+    exportBooks(directory.resolve("books" + format.extension));
+    exportLoans(directory.resolve("loans" + format.extension));
+    exportRequests(directory.resolve("requests" + format.extension));
+  }
+
+  public long exportBooks(Path target) throws IOException {
+    Object[] row = new Object[BOOK_COLUMNS.length];
+    return export(target, BOOK_COLUMNS, rows -> libraryService.forEachBook(book -> {
+      row[0] = book.getIsbn();
+      row[1] = book.getTitle();
+      row[2] = book.getAuthor();
+      row[3] = book.getGenre();
+      row[4] = book.isIssued();
+      row[5] = book.getIssuedTo();
+      row[6] = book.getIssueDate();
+      row[7] = book.getDueDate();
+      rows.write(row);
+    }));
+  }
+
+  public long exportLoans(Path target) throws IOException {
+    Object[] row = new Object[LOAN_COLUMNS.length];
+    return export(target, LOAN_COLUMNS, rows -> libraryService.forEachBook(book -> {
+      if (!book.isIssued())
+        return;
+      row[0] = book.getIsbn();
+      row[1] = book.getTitle();
+      row[2] = book.getIssuedTo();
+      row[3] = book.getIssueDate();
+      row[4] = book.getDueDate();
+      rows.write(row);
+    }));
+  }
+
+  public long exportRequests(Path target) throws IOException {
+    Object[] row = new Object[REQUEST_COLUMNS.length];
+    return export(target, REQUEST_COLUMNS, rows -> requestService.forEachRequest(request -> {
+      row[0] = request.getRequestId();
+      row[1] = request.getIsbn();
+      row[2] = request.getUsername();
+      row[3] = request.getRequestDate();
+      row[4] = request.getStatus().name();
+      rows.write(row);
+    }));
+  }
+
+  private interface RowSource {
+    void writeRows(RowWriter rows);
+  }
+
+  private interface RowWriter {
+    void write(Object[] row);
+  }
+
+  private long export(Path target, String[] columns, RowSource source) throws IOException {
+    Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+    long[] count = { 0 };
+    try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING)) {
+      channel = out;
+      buffer.clear();
+      if (format == Format.CSV)
+        writeLine(columns, columns);
+      source.writeRows(row -> {
+        try {
+          writeLine(columns, row);
+          count[0]++;
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+      drain();
+      out.force(false);
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    } finally {
+      channel = null;
+    }
+    Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    return count[0];
+  }
+
+  private void writeLine(String[] columns, Object[] row) throws IOException {
+    line.setLength(0);
+    if (format == Format.CSV) {
+      for (int i = 0; i < row.length; i++) {
+        if (i > 0)
+          line.append(',');
+        appendCsv(row[i]);
+      }
+    } else {
+      line.append('{');
+      for (int i = 0; i < row.length; i++) {
+        if (i > 0)
+          line.append(',');
+        appendJsonString(columns[i]);
+        line.append(':');
+        appendJson(row[i]);
+      }
+      line.append('}');
+    }
+    line.append('\n');
+    encode();
+  }
+
+  private void appendCsv(Object value) {
+    if (value == null)
+      return;
+    String text = toText(value);
+    if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+      line.append(text);
+      return;
+    }
+    line.append('"');
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (c == '"')
+        line.append('"');
+      line.append(c);
+    }
+    line.append('"');
+  }
+
+  private void appendJson(Object value) {
+    if (value == null)
+      line.append("null");
+    else if (value instanceof Boolean)
+      line.append(value);
+    else
+      appendJsonString(toText(value));
+  }
+
+  private void appendJsonString(String text) {
+    line.append('"');
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      switch (c) {
+        case '"': line.append("\\\""); break;
+        case '\\': line.append("\\\\"); break;
+        case '\n': line.append("\\n"); break;
+        case '\r': line.append("\\r"); break;
+        case '\t': line.append("\\t"); break;
+        default:
+          if (c < 0x20)
+            line.append(String.format("\\u%04x", (int) c));
+          else
+            line.append(c);
+      }
+    }
+    line.append('"');
+  }
+
+  // Dates go out as ISO-8601 instants in UTC
+  private static String toText(Object value) {
+    if (value instanceof Date)
+      return ((Date) value).toInstant().toString();
+    return value.toString();
+  }
+
+  private void encode() throws IOException {
+    CharBuffer chars = CharBuffer.wrap(line);
+    encoder.reset();
+    while (true) {
+      CoderResult result = encoder.encode(chars, buffer, true);
+      if (result.isOverflow())
+        drain();
+      else
+        break;
+    }
+    while (encoder.flush(buffer).isOverflow())
+      drain();
+  }
+
+  private void drain() throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining())
+      channel.write(buffer);
+    buffer.clear();
+  }
+
+  // Usage: java -cp bin services.CatalogExporter <output-dir> [csv|jsonl]
+  public static void main(String[] args) throws Exception {
+    if (args.length < 1 || args.length > 2) {
+      System.err.println("Usage: CatalogExporter <output-dir> [csv|jsonl]");
+      System.exit(1);
+    }
+    Format format = args.length == 2 ? Format.valueOf(args[1].toUpperCase()) : Format.CSV;
+    // Only replays what is on disk, so it can run while the app is open
+    LibraryService libraryService;
+    BookRequestService requestService;
+    try {
+      libraryService = new LibraryService(true);
+      requestService = new BookRequestService(libraryService, true);
+    } catch (IllegalStateException e) {
+      System.err.println(e.getMessage());
+      System.exit(1);
+      return;
+    }
+    long start = System.currentTimeMillis();
+    new CatalogExporter(libraryService, requestService, format).exportAll(Paths.get(args[0]));
+    System.out.println("Exported to " + args[0] + " in " + (System.currentTimeMillis() - start) + " ms");
+  }
+}
@@ -0,0 +1,306 @@
+package services;
+
+import models.Book;
+import models.Isbn;
+import utils.Constants;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Streams a CSV (isbn,title,author,genre) or JSON Lines catalog file into the
+// library. Lines are read in chunks and parsed on a worker pool; parsed
+// chunks are consumed in file order, de-duplicated and committed in large
+// batches, one persistence write each. Existing ISBNs are looked up in the
+// store row by row and only the file's own ISBNs are kept in memory, with a
+// bounded number of chunks in flight, so memory does not depend on the size
+// of the file or of the catalog.
+public class CatalogImporter {
+  public static final int CHUNK_LINES = 5_000;
+  public static final int BATCH_SIZE = 50_000;
+
+  public interface ProgressListener {
+    void onProgress(Result progress);
+  }
+
+  public static class Result {
+    private long imported;
+    private long duplicates;
+    private long rejected;
+
+    public long getImported() {
+      return imported;
+    }
+
+    public long getDuplicates() {
+      return duplicates;
+    }
+
+    public long getRejected() {
+      return rejected;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%d imported, %d duplicates, %d rejected", imported, duplicates, rejected);
+    }
+  }
+
+  private final LibraryService libraryService;
+
+  public CatalogImporter(LibraryService libraryService) {
+    this.libraryService = libraryService;
+  }
+
+  public Result importFile(Path file, ProgressListener listener) throws IOException {
+    boolean json = isJsonLines(file);
+    // Canonical ISBNs of the rows accepted from this file
+    Set<String> seenIsbns = new HashSet<>();
+
+    int threads = Runtime.getRuntime().availableProcessors();
+    ExecutorService parsers = Executors.newFixedThreadPool(threads, r -> {
+      Thread thread = new Thread(r, "catalog-import");
+      thread.setDaemon(true);
+      return thread;
+    });
+    Deque<Future<List<Book>>> inFlight = new ArrayDeque<>();
+    Result result = new Result();
+    List<Book> batch = new ArrayList<>(BATCH_SIZE);
+
+    try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+      boolean first = true;
+      List<String> chunk = new ArrayList<>(CHUNK_LINES);
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (first && !json && line.toLowerCase().startsWith("isbn")) {
+          first = false;
+          continue; // header row
+        }
+        first = false;
+        chunk.add(line);
+        if (chunk.size() == CHUNK_LINES) {
+          inFlight.add(submit(parsers, chunk, json));
+          chunk = new ArrayList<>(CHUNK_LINES);
+          if (inFlight.size() >= threads * 2)
+            drain(inFlight.poll(), seenIsbns, batch, result, listener);
+        }
+      }
+      if (!chunk.isEmpty())
+        inFlight.add(submit(parsers, chunk, json));
+      while (!inFlight.isEmpty())
+        drain(inFlight.poll(), seenIsbns, batch, result, listener);
+      commit(batch, result, listener);
+    } finally {
+      parsers.shutdownNow();
+    }
+    return result;
+  }
+
+  private Future<List<Book>> submit(ExecutorService parsers, List<String> lines, boolean json) {
+    return parsers.submit(() -> {
+      List<Book> books = new ArrayList<>(lines.size());
+      for (String line : lines) {
+        if (line.trim().isEmpty())
+          continue;
+        books.add(json ? parseJsonLine(line) : parseCsvLine(line));
+      }
+      return books;
+    });
+  }
+
+  private void drain(Future<List<Book>> parsed, Set<String> seenIsbns, List<Book> batch,
+      Result result, ProgressListener listener) throws IOException {
+    List<Book> books;
+    try {
+      books = parsed.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Import interrupted", e);
+    } catch (ExecutionException e) {
+      throw new IOException("Error parsing catalog file", e.getCause());
+    }
+
+    for (Book book : books) {
+      if (book == null) {
+        result.rejected++;
+        continue;
+      }
+      // The store is asked with the ISBN as written, which BookDAO also
+      // tries in canonical form; a book is stored under the canonical one
+      String isbn = Isbn.normalize(book.getIsbn());
+      if (!seenIsbns.add(isbn) || libraryService.findBookByIsbn(book.getIsbn()) != null)
+        result.duplicates++;
+      else if (isbn.equals(book.getIsbn()))
+        batch.add(book);
+      else
+        batch.add(new Book(isbn, book.getTitle(), book.getAuthor(), book.getGenre()));
+    }
+    if (batch.size() >= BATCH_SIZE)
+      commit(batch, result, listener);
+  }
+
+  // Only a batch the store accepted counts as imported; one it failed to
+  // write ends the import
+  private void commit(List<Book> batch, Result result, ProgressListener listener) throws IOException {
+    if (!batch.isEmpty()) {
+      try {
+        libraryService.addBooks(batch);
+      } catch (IllegalStateException | UncheckedIOException e) {
+        throw new IOException("Error storing imported books after " + result.imported + ": " + e.getMessage(), e);
+      }
+      result.imported += batch.size();
+      batch.clear();
+    }
+    if (listener != null)
+      listener.onProgress(result);
+  }
+
+  private static boolean isJsonLines(Path file) {
+    String name = file.getFileName().toString().toLowerCase();
+    return name.endsWith(".jsonl") || name.endsWith(".ndjson") || name.endsWith(".json");
+  }
+
+  // Returns null for a record missing any of the four required fields. The
+  // ISBN is only trimmed here; drain() normalizes it.
+  private static Book toBook(String isbn, String title, String author, String genre) {
+    if (isBlank(isbn) || isBlank(title) || isBlank(author) || isBlank(genre))
+      return null;
+    return new Book(isbn.trim(), title.trim(), author.trim(), genre.trim());
+  }
+
+  private static boolean isBlank(String value) {
+    return value == null || value.trim().isEmpty();
+  }
+
+  // RFC 4180 style: fields may be quoted, with "" for a literal quote
+  static Book parseCsvLine(String line) {
+    List<String> fields = new ArrayList<>(4);
+    StringBuilder field = new StringBuilder();
+    boolean quoted = false;
+    for (int i = 0; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (quoted) {
+        if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+          field.append('"');
+          i++;
+        } else if (c == '"') {
+          quoted = false;
+        } else {
+          field.append(c);
+        }
+      } else if (c == '"') {
+        quoted = true;
+      } else if (c == ',') {
+        fields.add(field.toString());
+        field.setLength(0);
+      } else {
+        field.append(c);
+      }
+    }
+    fields.add(field.toString());
+    if (fields.size() < 4)
+      return null;
+    return toBook(fields.get(0), fields.get(1), fields.get(2), fields.get(3));
+  }
+
+  // Reads a flat JSON object; non-string values are kept as their literal
+  // text. A malformed line, including a bad unicode escape, is rejected.
+  static Book parseJsonLine(String line) {
+    Map<String, String> values = new HashMap<>();
+    int[] pos = { skipSpace(line, 0) };
+    if (pos[0] >= line.length() || line.charAt(pos[0]) != '{')
+      return null;
+    pos[0]++;
+    try {
+      while (true) {
+        pos[0] = skipSpace(line, pos[0]);
+        if (line.charAt(pos[0]) == '}')
+          break;
+        String key = readJsonString(line, pos);
+        pos[0] = skipSpace(line, pos[0]);
+        if (line.charAt(pos[0]++) != ':')
+          return null;
+        pos[0] = skipSpace(line, pos[0]);
+        String value;
+        if (line.charAt(pos[0]) == '"') {
+          value = readJsonString(line, pos);
+        } else {
+          int start = pos[0];
+          while (pos[0] < line.length() && ",}".indexOf(line.charAt(pos[0])) < 0)
+            pos[0]++;
+          value = line.substring(start, pos[0]).trim();
+        }
+        values.put(key, value);
+        pos[0] = skipSpace(line, pos[0]);
+        if (line.charAt(pos[0]) == ',')
+          pos[0]++;
+      }
+    } catch (IndexOutOfBoundsException | NumberFormatException e) {
+      return null;
+    }
+    return toBook(values.get("isbn"), values.get("title"), values.get("author"), values.get("genre"));
+  }
+
+  private static int skipSpace(String line, int pos) {
+    while (pos < line.length() && Character.isWhitespace(line.charAt(pos)))
+      pos++;
+    return pos;
+  }
+
+  private static String readJsonString(String line, int[] pos) {
+    if (line.charAt(pos[0]) != '"')
+      throw new IndexOutOfBoundsException();
+    StringBuilder value = new StringBuilder();
+    int i = pos[0] + 1;
+    while (true) {
+      char c = line.charAt(i++);
+      if (c == '"')
+        break;
+      if (c != '\\') {
+        value.append(c);
+        continue;
+      }
+      char escaped = line.charAt(i++);
+      switch (escaped) {
+        case 'n': value.append('\n'); break;
+        case 't': value.append('\t'); break;
+        case 'r': value.append('\r'); break;
+        case 'b': value.append('\b'); break;
+        case 'f': value.append('\f'); break;
+        case 'u':
+          String hex = line.substring(i, i + 4);
+          if (hex.startsWith("+") || hex.startsWith("-"))
+            throw new NumberFormatException(hex);
+          value.append((char) Integer.parseInt(hex, 16));
+          i += 4;
+          break;
+        default: value.append(escaped);
+      }
+    }
+    pos[0] = i;
+    return value.toString();
+  }
+
+  // Usage: java -cp bin services.CatalogImporter <catalog.csv|catalog.jsonl>
+  public static void main(String[] args) throws Exception {
+    if (args.length != 1) {
+      System.err.println("Usage: CatalogImporter <catalog.csv|catalog.jsonl>");
+      System.exit(1);
+    }
+    if (!LibraryService.lockDataDirectory()) {
+      System.err.println("Error importing: the library is open in another process (" + Constants.LOCK_FILE + ")");
+      System.exit(1);
+    }
+    LibraryService libraryService = new LibraryService();
+    long start = System.currentTimeMillis();
+    Result result = libraryService.importCatalog(Paths.get(args[0]),
+        progress -> System.out.println("... " + progress));
+    libraryService.flush().get();
+    System.out.println("Done in " + (System.currentTimeMillis() - start) + " ms: " + result);
+  }
+}
@@ -1,23 +1,69 @@
 package services;
 
 import dao.BookDAO;
+import dao.DataLock;
 import models.Book;
+import models.BookPage;
+import models.BookQuery;
+import models.BookSort;
+import models.CatalogStats;
+import models.Isbn;
+import utils.Constants;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 public class LibraryService {
   private BookDAO bookDAO;
+  private final List<Consumer<List<Book>>> overdueListeners = new CopyOnWriteArrayList<>();
+  private ScheduledExecutorService dueChecker;
+  private long lastDueCheck;
 
   public LibraryService() {
-    this.bookDAO = new BookDAO();
+    this(false);
   }
 
+  // Read-only for tools such as the exporter that run beside the app
+  public LibraryService(boolean readOnly) {
+    this.bookDAO = new BookDAO(readOnly);
+  }
+
+  // Taken by every process that writes the catalog before it opens one;
+  // false while another process holds it
+  public static boolean lockDataDirectory() {
+    return DataLock.acquire();
+  }
+
+  // A valid ISBN is stored in its canonical 13-digit form
   public boolean addBook(String isbn, String title, String author, String genre) {
-    if (bookDAO.findBookByIsbn(isbn) != null)
+    isbn = Isbn.normalize(isbn);
+    if (isbn == null || isbn.isEmpty() || bookDAO.findBookByIsbn(isbn) != null)
       return false;
-    bookDAO.addBook(new Book(isbn, title, author, genre));
-    return true;
+    Book book = new Book(isbn, title, author, genre);
+    return write(() -> bookDAO.addBook(book));
+  }
+
+  // Callers are expected to have filtered out ISBNs already in the catalog;
+  // a store that fails to write the batch throws
+  public void addBooks(List<Book> books) {
+    bookDAO.addBooks(books);
+  }
+
+  // Bulk-loads a CSV or JSON Lines file; see CatalogImporter
+  public CatalogImporter.Result importCatalog(Path file, CatalogImporter.ProgressListener listener)
+      throws IOException {
+    return new CatalogImporter(this).importFile(file, listener);
   }
 
   public boolean removeBook(String isbn) {
@@ -26,7 +72,7 @@ public class LibraryService {
 
   public boolean issueBook(String isbn, String issuedTo, int days) {
     Book book = bookDAO.findBookByIsbn(isbn);
-    if (book == null || book.isIssued())
+    if (book == null || book.isIssued() || !canBorrow(issuedTo))
       return false;
 
     book.setIssued(true);
@@ -34,8 +80,7 @@ public class LibraryService {
     book.setIssueDate(new Date());
     book.setDueDate(new Date(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(days)));
 
-    bookDAO.updateBook(book);
-    return true;
+    return write(() -> bookDAO.updateBook(book));
   }
 
   public boolean returnBook(String isbn) {
@@ -48,8 +93,19 @@ public class LibraryService {
     book.setIssueDate(null);
     book.setDueDate(null);
 
-    bookDAO.updateBook(book);
-    return true;
+    return write(() -> bookDAO.updateBook(book));
+  }
+
+  // Stores that cannot write throw (the jdbc and mapped ones); the action is
+  // then reported as failed instead of done
+  private boolean write(Runnable write) {
+    try {
+      write.run();
+      return true;
+    } catch (IllegalStateException | UncheckedIOException e) {
+      System.err.println(e.getMessage());
+      return false;
+    }
   }
 
   public boolean returnMyBook(String isbn, String username) {
@@ -60,6 +116,20 @@ public class LibraryService {
     return returnBook(isbn);
   }
 
+  // A member's current loans, from the borrower index
+  public List<Book> getLoansFor(String username) {
+    return bookDAO.getBooksIssuedTo(username);
+  }
+
+  public int getLoanCount(String username) {
+    return bookDAO.countBooksIssuedTo(username);
+  }
+
+  // False once the member has MAX_LOANS_PER_MEMBER books out
+  public boolean canBorrow(String username) {
+    return Constants.MAX_LOANS_PER_MEMBER <= 0 || getLoanCount(username) < Constants.MAX_LOANS_PER_MEMBER;
+  }
+
   public long getTimeLeft(String isbn) {
     Book book = bookDAO.findBookByIsbn(isbn);
     if (book == null || !book.isIssued() || book.getDueDate() == null)
@@ -67,11 +137,20 @@ public class LibraryService {
     return TimeUnit.MILLISECONDS.toDays(book.getDueDate().getTime() - System.currentTimeMillis());
   }
 
+  // Completes once all changes made so far are on disk
+  public CompletableFuture<Void> flush() {
+    return bookDAO.flush();
+  }
+
   // Delegated methods
   public List<Book> getAllBooks() {
     return bookDAO.getAllBooks();
   }
 
+  public void forEachBook(Consumer<Book> action) {
+    bookDAO.forEachBook(action);
+  }
+
   public List<Book> getAvailableBooks() {
     return bookDAO.getAvailableBooks();
   }
@@ -84,6 +163,53 @@ public class LibraryService {
     return bookDAO.searchBooks(keyword);
   }
 
+  // Books matching a composed filter, in catalog order, answered from the
+  // store's indexes where it has them
+  public List<Book> query(BookQuery query) {
+    return bookDAO.query(query);
+  }
+
+  // PAGE_SIZE books in sort order; pass the previous page's next cursor to
+  // continue, or null for the first page
+  public BookPage getPage(BookSort sort, String cursor) {
+    return bookDAO.page(sort, cursor, Constants.PAGE_SIZE);
+  }
+
+  // Word and prefix matches, best first, capped at SEARCH_RESULT_LIMIT
+  public List<Book> searchRanked(String query) {
+    return bookDAO.searchRanked(query, Constants.SEARCH_RESULT_LIMIT);
+  }
+
+  // Exactly the books searchBooks finds, with those that also rank as word
+  // or prefix matches moved to the front in rank order
+  public List<Book> searchRankedFirst(String keyword) {
+    List<Book> matches = bookDAO.searchBooks(keyword);
+    Set<String> found = new HashSet<>();
+    for (Book book : matches)
+      found.add(book.getIsbn());
+    List<Book> results = new ArrayList<>(matches.size());
+    Set<String> placed = new HashSet<>();
+    for (Book book : searchRanked(keyword)) {
+      if (found.contains(book.getIsbn()) && placed.add(book.getIsbn()))
+        results.add(book);
+    }
+    for (Book book : matches) {
+      if (placed.add(book.getIsbn()))
+        results.add(book);
+    }
+    return results;
+  }
+
+  // Misspelt words within one or two edits, capped at SEARCH_RESULT_LIMIT
+  public List<Book> searchFuzzy(String query) {
+    return bookDAO.searchFuzzy(query, Constants.SEARCH_RESULT_LIMIT);
+  }
+
+  // Type-ahead suggestions: titles and authors starting with prefix
+  public List<String> autocomplete(String prefix) {
+    return bookDAO.suggest(prefix, Constants.AUTOCOMPLETE_LIMIT);
+  }
+
   public Book findBookByIsbn(String isbn) {
     return bookDAO.findBookByIsbn(isbn);
   }
@@ -99,4 +225,54 @@ public class LibraryService {
   public int getIssuedBooksCount() {
     return bookDAO.getIssuedBooksCount();
   }
+
+  public CatalogStats getStats() {
+    return bookDAO.getStats();
+  }
+
+  // Issued books past their due date, the longest overdue first
+  public List<Book> getOverdueBooks() {
+    return bookDAO.getBooksDueBetween(Long.MIN_VALUE, System.currentTimeMillis());
+  }
+
+  // Issued books falling due in the next given number of days, earliest first
+  public List<Book> getBooksDueWithin(int days) {
+    long now = System.currentTimeMillis();
+    return bookDAO.getBooksDueBetween(now, now + TimeUnit.DAYS.toMillis(days));
+  }
+
+  // Every DUE_CHECK_INTERVAL_MS, listeners get the loans that passed their
+  // due date since the previous check, on a background thread
+  public synchronized void addOverdueListener(Consumer<List<Book>> listener) {
+    overdueListeners.add(listener);
+    if (dueChecker != null)
+      return;
+    lastDueCheck = System.currentTimeMillis();
+    dueChecker = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "due-date-checker");
+      thread.setDaemon(true);
+      return thread;
+    });
+    dueChecker.scheduleWithFixedDelay(this::checkDueDates, Constants.DUE_CHECK_INTERVAL_MS,
+        Constants.DUE_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+  }
+
+  public void removeOverdueListener(Consumer<List<Book>> listener) {
+    overdueListeners.remove(listener);
+  }
+
+  private void checkDueDates() {
+    long now = System.currentTimeMillis();
+    List<Book> crossed = bookDAO.getBooksDueBetween(lastDueCheck, now);
+    lastDueCheck = now;
+    if (crossed.isEmpty())
+      return;
+    for (Consumer<List<Book>> listener : overdueListeners) {
+      try {
+        listener.accept(crossed);
+      } catch (RuntimeException e) {
+        System.err.println("Error notifying overdue listener: " + e.getMessage());
+      }
+    }
+  }
 }
\ No newline at end of file
@@ -137,8 +137,11 @@ public class BookManagementPanel extends JPanel implements MainFrame.Refreshable
 
   private void performSearch() {
     String query = searchField.getText().trim();
-    List<Book> results = query.isEmpty() ? libraryService.getAllBooks() : libraryService.searchBooks(query);
-    bookTable.updateData(results);
+    if (query.isEmpty()) {
+      bookTable.updateData(libraryService.getAllBooks());
+      return;
+    }
+    bookTable.updateData(libraryService.searchRankedFirst(query));
   }
 
   private void showIssueBookDialog() {
@@ -1,6 +1,9 @@
 package ui;
 
 import models.Book;
+import models.BookPage;
+import models.BookSort;
+import models.CatalogStats;
 import services.LibraryService;
 import ui.components.StatCard;
 import services.AuthService;
@@ -11,6 +14,8 @@ import javax.swing.table.DefaultTableCellRenderer;
 import javax.swing.table.DefaultTableModel;
 import javax.swing.table.JTableHeader;
 import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
 
 public class DashboardPanel extends JPanel {
   private LibraryService libraryService;
@@ -18,6 +23,16 @@ public class DashboardPanel extends JPanel {
   private MainFrame mainFrame;
   private JTable booksTable;
   private DefaultTableModel tableModel;
+  private CatalogStats stats;
+  // The table shows one page at a time; earlier pages' cursors are kept so
+  // Previous can step back
+  private BookSort sort = BookSort.TITLE;
+  private String pageCursor;
+  private String nextCursor;
+  private final List<String> previousCursors = new ArrayList<>();
+  private JButton previousPageBtn;
+  private JButton nextPageBtn;
+  private JLabel pageLabel;
 
   public DashboardPanel(LibraryService libraryService, AuthService authService, MainFrame mainFrame) {
     this.libraryService = libraryService;
@@ -31,6 +46,7 @@ public class DashboardPanel extends JPanel {
     setLayout(new BorderLayout(15, 15));
     setBackground(Constants.LIGHT_BG);
     setBorder(BorderFactory.createEmptyBorder(20, 20, 20, 20));
+    stats = libraryService.getStats();
 
     add(createHeader(), BorderLayout.NORTH);
     add(createStatsPanel(), BorderLayout.CENTER);
@@ -108,16 +124,18 @@ public class DashboardPanel extends JPanel {
   }
 
   private JPanel createStatsPanel() {
-    JPanel statsPanel = new JPanel(new GridLayout(1, 3, 25, 25));
+    JPanel statsPanel = new JPanel(new GridLayout(1, 4, 25, 25));
     statsPanel.setBorder(BorderFactory.createEmptyBorder(20, 0, 20, 0));
     statsPanel.setBackground(Constants.LIGHT_BG);
 
     statsPanel.add(new StatCard("Total Books",
-        String.valueOf(libraryService.getTotalBooks()), Constants.PRIMARY_COLOR));
+        String.valueOf(stats.getTotalBooks()), Constants.PRIMARY_COLOR));
     statsPanel.add(new StatCard("Available",
-        String.valueOf(libraryService.getAvailableBooksCount()), Constants.SUCCESS_COLOR));
+        String.valueOf(stats.getAvailableBooks()), Constants.SUCCESS_COLOR));
     statsPanel.add(new StatCard("Issued",
-        String.valueOf(libraryService.getIssuedBooksCount()), Constants.WARNING_COLOR));
+        String.valueOf(stats.getIssuedBooks()), Constants.WARNING_COLOR));
+    statsPanel.add(new StatCard("Overdue",
+        String.valueOf(stats.getOverdueBooks()), Constants.STATUS_OVERDUE));
 
     return statsPanel;
   }
@@ -134,7 +152,7 @@ public class DashboardPanel extends JPanel {
     tableTitle.setFont(Constants.TITLE_FONT);
     tableTitle.setForeground(Constants.TEXT_PRIMARY);
     
-    JLabel badge = new JLabel(libraryService.getAllBooks().size() + " books");
+    JLabel badge = new JLabel(stats.getTotalBooks() + " books");
     badge.setFont(Constants.SMALL_FONT);
     badge.setForeground(Constants.BTN_TEXT_COLOR);
     badge.setBackground(Constants.PRIMARY_COLOR);
@@ -267,6 +285,29 @@ public class DashboardPanel extends JPanel {
     JButton refreshBtn = createModernButton("🔄 Refresh", Constants.BTN_PRIMARY);
     refreshBtn.addActionListener(e -> loadBooks());
 
+    String[] sortNames = { "Title", "Author", "ISBN", "Due Date" };
+    JComboBox<String> sortBox = new JComboBox<>(sortNames);
+    sortBox.setFont(Constants.NORMAL_FONT);
+    sortBox.addActionListener(e -> {
+      sort = BookSort.values()[sortBox.getSelectedIndex()];
+      firstPage();
+    });
+
+    previousPageBtn = createModernButton("◀ Previous", Constants.BTN_SECONDARY);
+    previousPageBtn.addActionListener(e -> previousPage());
+    nextPageBtn = createModernButton("Next ▶", Constants.BTN_SECONDARY);
+    nextPageBtn.addActionListener(e -> nextPage());
+    pageLabel = new JLabel();
+    pageLabel.setFont(Constants.NORMAL_FONT);
+
+    JLabel sortLabel = new JLabel("Sort by:");
+    sortLabel.setFont(Constants.NORMAL_FONT);
+    buttonPanel.add(sortLabel);
+    buttonPanel.add(sortBox);
+    buttonPanel.add(previousPageBtn);
+    buttonPanel.add(pageLabel);
+    buttonPanel.add(nextPageBtn);
+
     if (authService.canManageBooks()) {
       JButton returnBookBtn = createModernButton("↩️ Return Selected", Constants.BTN_SUCCESS);
       returnBookBtn.addActionListener(e -> returnSelectedBook());
@@ -317,9 +358,16 @@ public class DashboardPanel extends JPanel {
     return baseColor.darker();
   }
 
+  // Reloads the current page; a page costs the same at any catalog size
   private void loadBooks() {
+    BookPage page = libraryService.getPage(sort, pageCursor);
+    nextCursor = page.getNextCursor();
+    previousPageBtn.setEnabled(!previousCursors.isEmpty());
+    nextPageBtn.setEnabled(page.hasNext());
+    pageLabel.setText("Page " + (previousCursors.size() + 1));
+
     tableModel.setRowCount(0);
-    for (Book book : libraryService.getAllBooks()) {
+    for (Book book : page.getBooks()) {
       if (authService.canManageBooks()) {
         tableModel.addRow(new Object[] {
             book.getIsbn(), 
@@ -345,6 +393,27 @@ public class DashboardPanel extends JPanel {
     }
   }
 
+  private void firstPage() {
+    previousCursors.clear();
+    pageCursor = null;
+    loadBooks();
+  }
+
+  private void nextPage() {
+    if (nextCursor == null)
+      return;
+    previousCursors.add(pageCursor);
+    pageCursor = nextCursor;
+    loadBooks();
+  }
+
+  private void previousPage() {
+    if (previousCursors.isEmpty())
+      return;
+    pageCursor = previousCursors.remove(previousCursors.size() - 1);
+    loadBooks();
+  }
+
   private void returnSelectedBook() {
     int selectedRow = booksTable.getSelectedRow();
     if (selectedRow == -1) {
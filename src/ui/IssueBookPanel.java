@@ -151,6 +151,11 @@ public class IssueBookPanel extends JPanel {
         return;
       }
 
+      if (!libraryService.canBorrow(user)) {
+        showError(user + " already has " + libraryService.getLoanCount(user) + " books on loan, the most allowed!");
+        return;
+      }
+
       if (libraryService.issueBook(isbn, user, days)) {
         JOptionPane.showMessageDialog(this,
             "<html><b>Book issued successfully!</b><br>" +
@@ -255,6 +255,11 @@ public class MainFrame extends JFrame {
       } catch (Exception e) {
         e.printStackTrace();
       }
+      if (!LibraryService.lockDataDirectory()) {
+        JOptionPane.showMessageDialog(null, "The library is already open in another window or import.",
+            Constants.APP_NAME, JOptionPane.ERROR_MESSAGE);
+        System.exit(1);
+      }
       new MainFrame().setVisible(true);
     });
   }
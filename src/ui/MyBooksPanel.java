@@ -9,7 +9,6 @@ import javax.swing.*;
 import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.util.List;
-import java.util.stream.Collectors;
 
 public class MyBooksPanel extends JPanel implements MainFrame.Refreshable {
   private LibraryService libraryService;
@@ -68,9 +67,7 @@ public class MyBooksPanel extends JPanel implements MainFrame.Refreshable {
     tableModel.setRowCount(0);
     String currentUser = authService.getCurrentUser().getUsername();
 
-    List<Book> myBooks = libraryService.getIssuedBooks().stream()
-        .filter(book -> book.getIssuedTo().equals(currentUser))
-        .collect(Collectors.toList());
+    List<Book> myBooks = libraryService.getLoansFor(currentUser);
 
     for (Book book : myBooks) {
       long daysLeft = book.getDaysUntilDue();
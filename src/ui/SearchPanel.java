@@ -4,11 +4,19 @@ import services.LibraryService;
 import services.AuthService;
 import services.BookRequestService;
 import models.Book;
+import models.BookQuery;
 import models.BookRequest;
 import utils.Constants;
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.table.DefaultTableModel;
 import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 import java.util.List;
 
 public class SearchPanel extends JPanel implements MainFrame.Refreshable {
@@ -16,8 +24,14 @@ public class SearchPanel extends JPanel implements MainFrame.Refreshable {
   private AuthService authService;
   private BookRequestService requestService;
   private JTextField searchField;
+  private JComboBox<String> genreFilter;
   private JTable resultsTable;
   private DefaultTableModel tableModel;
+  private JPopupMenu suggestionPopup;
+  private JList<String> suggestionList;
+  private DefaultListModel<String> suggestionModel;
+  private Timer suggestionTimer;
+  private SwingWorker<List<String>, Void> pendingSuggestions;
 
   public SearchPanel(LibraryService libraryService, AuthService authService, BookRequestService requestService) {
     this.libraryService = libraryService;
@@ -56,7 +70,11 @@ public class SearchPanel extends JPanel implements MainFrame.Refreshable {
     searchControls.add(searchButton, BorderLayout.EAST);
 
     searchButton.addActionListener(e -> performSearch());
-    searchField.addActionListener(e -> performSearch());
+    searchField.addActionListener(e -> {
+      acceptSuggestion();
+      performSearch();
+    });
+    installAutocomplete();
 
     searchPanel.add(titleLabel, BorderLayout.NORTH);
     searchPanel.add(searchControls, BorderLayout.SOUTH);
@@ -64,6 +82,134 @@ public class SearchPanel extends JPanel implements MainFrame.Refreshable {
     return searchPanel;
   }
 
+  // Suggestions are fetched off the EDT once typing pauses for
+  // AUTOCOMPLETE_DELAY_MS; a reply for text that has changed since is dropped
+  private void installAutocomplete() {
+    suggestionModel = new DefaultListModel<>();
+    suggestionList = new JList<>(suggestionModel);
+    suggestionList.setFont(Constants.NORMAL_FONT);
+    suggestionList.setFocusable(false);
+    suggestionList.addMouseListener(new MouseAdapter() {
+      @Override
+      public void mouseClicked(MouseEvent e) {
+        if (suggestionList.getSelectedValue() != null) {
+          acceptSuggestion();
+          performSearch();
+        }
+      }
+    });
+
+    suggestionPopup = new JPopupMenu();
+    suggestionPopup.setFocusable(false);
+    suggestionPopup.setBorder(BorderFactory.createLineBorder(Constants.BORDER_COLOR));
+    suggestionPopup.add(suggestionList);
+
+    suggestionTimer = new Timer(Constants.AUTOCOMPLETE_DELAY_MS, e -> fetchSuggestions());
+    suggestionTimer.setRepeats(false);
+    searchField.getDocument().addDocumentListener(new DocumentListener() {
+      public void insertUpdate(DocumentEvent e) {
+        suggestionTimer.restart();
+      }
+
+      public void removeUpdate(DocumentEvent e) {
+        suggestionTimer.restart();
+      }
+
+      public void changedUpdate(DocumentEvent e) {
+      }
+    });
+
+    InputMap keys = searchField.getInputMap(JComponent.WHEN_FOCUSED);
+    ActionMap actions = searchField.getActionMap();
+    keys.put(KeyStroke.getKeyStroke(KeyEvent.VK_DOWN, 0), "suggestionDown");
+    keys.put(KeyStroke.getKeyStroke(KeyEvent.VK_UP, 0), "suggestionUp");
+    keys.put(KeyStroke.getKeyStroke(KeyEvent.VK_ESCAPE, 0), "suggestionHide");
+    actions.put("suggestionDown", new AbstractAction() {
+      public void actionPerformed(ActionEvent e) {
+        moveSuggestion(1);
+      }
+    });
+    actions.put("suggestionUp", new AbstractAction() {
+      public void actionPerformed(ActionEvent e) {
+        moveSuggestion(-1);
+      }
+    });
+    actions.put("suggestionHide", new AbstractAction() {
+      public void actionPerformed(ActionEvent e) {
+        hideSuggestions();
+      }
+    });
+  }
+
+  private void fetchSuggestions() {
+    String prefix = searchField.getText().trim();
+    if (pendingSuggestions != null)
+      pendingSuggestions.cancel(false);
+    if (prefix.isEmpty()) {
+      suggestionPopup.setVisible(false);
+      return;
+    }
+
+    pendingSuggestions = new SwingWorker<List<String>, Void>() {
+      @Override
+      protected List<String> doInBackground() {
+        return libraryService.autocomplete(prefix);
+      }
+
+      @Override
+      protected void done() {
+        if (isCancelled() || !prefix.equals(searchField.getText().trim()))
+          return;
+        try {
+          showSuggestions(prefix, get());
+        } catch (Exception e) {
+          System.err.println("Error loading suggestions: " + e.getMessage());
+        }
+      }
+    };
+    pendingSuggestions.execute();
+  }
+
+  private void showSuggestions(String prefix, List<String> suggestions) {
+    // Nothing to offer beyond what is already typed
+    if (suggestions.isEmpty() || (suggestions.size() == 1 && suggestions.get(0).equalsIgnoreCase(prefix))
+        || !searchField.isShowing()) {
+      suggestionPopup.setVisible(false);
+      return;
+    }
+    suggestionModel.clear();
+    for (String suggestion : suggestions)
+      suggestionModel.addElement(suggestion);
+    suggestionList.clearSelection();
+    suggestionList.setVisibleRowCount(suggestions.size());
+    suggestionPopup.setPopupSize(searchField.getWidth(), suggestionList.getPreferredScrollableViewportSize().height + 4);
+    suggestionPopup.show(searchField, 0, searchField.getHeight());
+    searchField.requestFocusInWindow();
+  }
+
+  private void moveSuggestion(int step) {
+    if (!suggestionPopup.isVisible())
+      return;
+    int index = Math.max(0, Math.min(suggestionModel.size() - 1, suggestionList.getSelectedIndex() + step));
+    suggestionList.setSelectedIndex(index);
+    suggestionList.ensureIndexIsVisible(index);
+  }
+
+  // Copies the highlighted suggestion into the search field
+  private void acceptSuggestion() {
+    String suggestion = suggestionPopup.isVisible() ? suggestionList.getSelectedValue() : null;
+    if (suggestion != null)
+      searchField.setText(suggestion);
+    hideSuggestions();
+  }
+
+  private void hideSuggestions() {
+    suggestionTimer.stop();
+    if (pendingSuggestions != null)
+      pendingSuggestions.cancel(false);
+    suggestionPopup.setVisible(false);
+  }
+
   private JScrollPane createResultsTable() {
     String[] columns = authService.isMember() ? new String[] { "ISBN", "Title", "Author", "Genre", "Status", "Action" }
         : new String[] { "ISBN", "Title", "Author", "Genre", "Status", "Issued To" };
@@ -96,11 +242,18 @@ public class SearchPanel extends JPanel implements MainFrame.Refreshable {
     JButton showIssuedButton = createStyledButton("Show Issued", Constants.BTN_WARNING);
     JButton refreshButton = createStyledButton("🔄 Refresh", Constants.BTN_SECONDARY);
 
+    genreFilter = new JComboBox<>();
+    genreFilter.setFont(Constants.NORMAL_FONT);
+    loadGenres();
+    genreFilter.addActionListener(e -> performSearch());
+
     showAllButton.addActionListener(e -> showAllBooks());
     showAvailableButton.addActionListener(e -> showAvailableBooks());
     showIssuedButton.addActionListener(e -> showIssuedBooks());
     refreshButton.addActionListener(e -> refresh());
 
+    buttonPanel.add(new JLabel("Genre:"));
+    buttonPanel.add(genreFilter);
     buttonPanel.add(showAllButton);
     buttonPanel.add(showAvailableButton);
     buttonPanel.add(showIssuedButton);
@@ -119,21 +272,67 @@ public class SearchPanel extends JPanel implements MainFrame.Refreshable {
     return button;
   }
 
+  // Every substring match, ranked word matches first. With a genre picked
+  // the keyword is a substring filter within it.
   private void performSearch() {
+    hideSuggestions();
     String keyword = searchField.getText().trim();
-    displayBooks(keyword.isEmpty() ? libraryService.getAllBooks() : libraryService.searchBooks(keyword));
+    String genre = selectedGenre();
+    if (genre != null) {
+      displayBooks(libraryService.query(keyword.isEmpty() ? BookQuery.genre(genre)
+          : BookQuery.and(BookQuery.genre(genre), BookQuery.keyword(keyword))));
+      return;
+    }
+    if (keyword.isEmpty()) {
+      displayBooks(libraryService.getAllBooks());
+      return;
+    }
+    List<Book> results = libraryService.searchRankedFirst(keyword);
+    // Nothing matched as typed, so show books whose words are a typo away
+    if (results.isEmpty())
+      results = libraryService.searchFuzzy(keyword);
+    displayBooks(results);
   }
 
   private void showAllBooks() {
-    displayBooks(libraryService.getAllBooks());
+    String genre = selectedGenre();
+    displayBooks(genre == null ? libraryService.getAllBooks() : libraryService.query(BookQuery.genre(genre)));
   }
 
   private void showAvailableBooks() {
-    displayBooks(libraryService.getAvailableBooks());
+    String genre = selectedGenre();
+    displayBooks(genre == null ? libraryService.getAvailableBooks()
+        : libraryService.query(BookQuery.and(BookQuery.genre(genre), BookQuery.available())));
   }
 
   private void showIssuedBooks() {
-    displayBooks(libraryService.getIssuedBooks());
+    String genre = selectedGenre();
+    displayBooks(genre == null ? libraryService.getIssuedBooks()
+        : libraryService.query(BookQuery.and(BookQuery.genre(genre), BookQuery.issued())));
+  }
+
+  // Genres come from the catalog counters, so listing them costs no scan;
+  // the current choice is kept if it still exists
+  private void loadGenres() {
+    Object selected = genreFilter.getSelectedItem();
+    ActionListener[] listeners = genreFilter.getActionListeners();
+    for (ActionListener listener : listeners)
+      genreFilter.removeActionListener(listener);
+    genreFilter.removeAllItems();
+    genreFilter.addItem("All Genres");
+    for (String genre : libraryService.getStats().getBooksByGenre().keySet()) {
+      if (genre != null && !genre.isEmpty())
+        genreFilter.addItem(genre);
+    }
+    genreFilter.setSelectedItem(selected);
+    if (genreFilter.getSelectedIndex() < 0)
+      genreFilter.setSelectedIndex(0);
+    for (ActionListener listener : listeners)
+      genreFilter.addActionListener(listener);
+  }
+
+  private String selectedGenre() {
+    return genreFilter.getSelectedIndex() <= 0 ? null : (String) genreFilter.getSelectedItem();
   }
 
   private void displayBooks(List<Book> books) {
@@ -163,6 +362,7 @@ public class SearchPanel extends JPanel implements MainFrame.Refreshable {
 
   @Override
   public void refresh() {
+    loadGenres();
     showAllBooks();
   }
 
@@ -225,12 +425,17 @@ public class SearchPanel extends JPanel implements MainFrame.Refreshable {
       String status = "Request Book"; // Reset to original text
 
       // Request the book
-      BookRequest request = requestService.requestBook(isbn, authService.getCurrentUser().getUsername());
+      String username = authService.getCurrentUser().getUsername();
+      BookRequest request = requestService.requestBook(isbn, username);
       if (request != null) {
         JOptionPane.showMessageDialog(button,
             "Book request submitted successfully!\nYour request ID: " + request.getRequestId(),
             "Request Submitted", JOptionPane.INFORMATION_MESSAGE);
         panel.refresh();
+      } else if (!panel.libraryService.canBorrow(username)) {
+        JOptionPane.showMessageDialog(button,
+            "Unable to request book. You already have the most books on loan that are allowed.",
+            "Request Failed", JOptionPane.ERROR_MESSAGE);
       } else {
         JOptionPane.showMessageDialog(button,
             "Unable to request book. It might be already requested or unavailable.",
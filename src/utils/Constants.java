@@ -5,8 +5,44 @@ import java.awt.*;
 public class Constants {
   public static final String APP_NAME = "Library Management System";
   public static final String DATA_FILE = "data/books.dat";
+  public static final String CATALOG_SHARD_FILE = "data/books-%d.dat";
   public static final String USER_FILE = "data/users.dat";
+  public static final String USER_LOG_FILE = "data/users.log";
   public static final String REQUESTS_FILE = "data/requests.dat";
+  public static final String JOURNAL_FILE = "data/books.journal";
+  public static final String MAPPED_CATALOG_FILE = "data/books.map";
+  public static final String COLUMNAR_CATALOG_FILE = "data/books.col";
+  public static final String COLUMNAR_JOURNAL_FILE = "data/books.col.journal";
+  public static final String OFFHEAP_CATALOG_FILE = "data/books.off";
+  public static final String OFFHEAP_JOURNAL_FILE = "data/books.off.journal";
+  public static final String LOCK_FILE = "data/library.lock";
+
+  // Persistence tuning, overridable with -Dlibrary.<name>=<value>
+  public static final String STORAGE_FILE = "file";
+  public static final String STORAGE_MAPPED = "mapped";
+  public static final String STORAGE_JDBC = "jdbc";
+  public static final String STORAGE_COLUMNAR = "columnar";
+  public static final String STORAGE_OFFHEAP = "offheap";
+  public static final String STORAGE_MODE = System.getProperty("library.storage", STORAGE_FILE);
+  public static final String JDBC_URL = System.getProperty("library.jdbc.url", "jdbc:h2:./data/library");
+  // Off-heap slabs count against -XX:MaxDirectMemorySize, which defaults to the heap limit
+  public static final int OFFHEAP_SLAB_MB = Integer.getInteger("library.offheap.slabMb", 64);
+  public static final int CATALOG_SHARDS = Integer.getInteger("library.catalog.shards", 8);
+  public static final int JOURNAL_COMPACT_RECORDS = Integer.getInteger("library.journal.compactRecords", 1000);
+  public static final long JOURNAL_COMPACT_BYTES = Long.getLong("library.journal.compactBytes", 1L << 20);
+  public static final long COMPACT_INTERVAL_MS = Long.getLong("library.journal.compactIntervalMs", 30_000L);
+  public static final String FLUSH_POLICY = System.getProperty("library.flush.policy", "interval");
+  public static final long FLUSH_INTERVAL_MS = Long.getLong("library.flush.intervalMs", 200L);
+  public static final int FLUSH_BATCH_OPS = Integer.getInteger("library.flush.batchOps", 64);
+  public static final int SEARCH_RESULT_LIMIT = Integer.getInteger("library.search.limit", 1000);
+  // Rows per page in paged tables such as the dashboard
+  public static final int PAGE_SIZE = Integer.getInteger("library.page.size", 100);
+  public static final int AUTOCOMPLETE_LIMIT = Integer.getInteger("library.autocomplete.limit", 8);
+  // Most books one member may have on loan at once; 0 or less (the default)
+  // means no limit
+  public static final int MAX_LOANS_PER_MEMBER = Integer.getInteger("library.loans.maxPerMember", 0);
+  public static final long DUE_CHECK_INTERVAL_MS = Long.getLong("library.due.checkIntervalMs", 60_000L);
+  public static final int AUTOCOMPLETE_DELAY_MS = Integer.getInteger("library.autocomplete.delayMs", 150);
 
   // UI Constants
   public static final Dimension WINDOW_SIZE = new Dimension(1200, 800);